@@ -0,0 +1,24 @@
+package com.biometrics;
+
+import com.biometrics.utils.OpenCVUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class BaseBenchmark {
+
+    public BaseBenchmark() {
+        OpenCVUtils.initializeLibrary();
+    }
+
+    protected byte[] getImageFromResource(String fileName) throws IOException {
+        return Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream(fileName)).readAllBytes();
+    }
+}
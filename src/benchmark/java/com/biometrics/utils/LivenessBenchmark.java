@@ -0,0 +1,134 @@
+package com.biometrics.utils;
+
+import com.biometrics.BaseBenchmark;
+import com.biometrics.controllers.ApiController;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.CascadeClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+@State(Scope.Thread)
+public class LivenessBenchmark extends BaseBenchmark {
+
+    private static final int FACE_DETECTION_MAX_SIZE = 800;
+    private static final double FACE_DETECTION_SCALE_FACTOR = 1.1;
+    private static final int FACE_DETECTION_MIN_NEIGHBORS = 3;
+    private static final double FACE_DETECTION_MIN_SIZE = 0.1;
+    private static final int NORMALIZED_IMAGES_SIZE = 400;
+
+    @Param({"liveness/real/test1", "liveness/fake/test24"})
+    public String fixture;
+
+    private ApiController api;
+    private CascadeClassifier faceClassifier;
+    private byte[] imageBytes;
+    private byte[] zoomedImageBytes;
+    private Mat image;
+    private Mat zoomedImage;
+    private Mat faceImage;
+    private Mat zoomedFaceImage;
+    private Mat normalizedFaceImage;
+    private Mat normalizedZoomedFaceImage;
+    private Mat grayFaceImage;
+    private Mat windowedFaceImage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        api = new ApiController();
+        faceClassifier = OpenCVUtils.getClassfierFromResource("cascades/face.xml");
+        imageBytes = getImageFromResource(fixture + "/image.jpeg");
+        zoomedImageBytes = getImageFromResource(fixture + "/zoomedImage.jpeg");
+        image = OpenCVUtils.getImage(imageBytes);
+        zoomedImage = OpenCVUtils.getImage(zoomedImageBytes);
+        faceImage = image.submat(detectFace(image));
+        zoomedFaceImage = zoomedImage.submat(detectFace(zoomedImage));
+        normalizedFaceImage = new Mat();
+        normalizedZoomedFaceImage = new Mat();
+        OpenCVUtils.resize(faceImage, normalizedFaceImage, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE);
+        OpenCVUtils.resize(zoomedFaceImage, normalizedZoomedFaceImage, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE);
+        grayFaceImage = new Mat();
+        OpenCVUtils.grayScale(faceImage, grayFaceImage);
+        windowedFaceImage = new Mat();
+    }
+
+    @Benchmark
+    public int verifyLivenessImages() {
+        return api.verifyLivenessImages(imageBytes, zoomedImageBytes);
+    }
+
+    @Benchmark
+    public Mat decodeImage() {
+        try (MatScope scope = MatScope.open()) {
+            return OpenCVUtils.getImage(imageBytes);
+        }
+    }
+
+    @Benchmark
+    public Rect detectFace() {
+        return detectFace(image);
+    }
+
+    @Benchmark
+    public Rect detectFaceSinglePass() {
+        return OpenCVUtils.detectBiggestFeatureRect(image, faceClassifier, 0, FACE_DETECTION_SCALE_FACTOR, FACE_DETECTION_MIN_NEIGHBORS, FACE_DETECTION_MIN_SIZE);
+    }
+
+    @Benchmark
+    public Rect detectFaceDefaults() {
+        return OpenCVUtils.detectBiggestFeatureRect(image, faceClassifier);
+    }
+
+    @Benchmark
+    public Mat normalizeFaceImage() {
+        try (MatScope scope = MatScope.open()) {
+            Mat normalizedImage = MatScope.track(new Mat());
+            OpenCVUtils.resize(faceImage, normalizedImage, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE, NORMALIZED_IMAGES_SIZE);
+            return normalizedImage;
+        }
+    }
+
+    @Benchmark
+    public boolean analyseBlurriness() {
+        return LivenessUtils.analyseNormalizedImagesBlurriness(normalizedFaceImage, normalizedZoomedFaceImage);
+    }
+
+    @Benchmark
+    public boolean analyseImageQuality() {
+        return LivenessUtils.analyseImageQuality(image);
+    }
+
+    @Benchmark
+    public boolean analyseImageBrightness() {
+        return LivenessUtils.analyseImageBrightness(image);
+    }
+
+    @Benchmark
+    public boolean analyseImageHistograms() {
+        return LivenessUtils.analyseImageHistograms(image, zoomedImage);
+    }
+
+    @Benchmark
+    public boolean analyseImageMoirePatternDisturbances() {
+        return LivenessUtils.analyseImageMoirePatternDisturbances(faceImage);
+    }
+
+    @Benchmark
+    public Mat hanningWindow() {
+        grayFaceImage.copyTo(windowedFaceImage);
+        OpenCVUtils.hanningWindow(windowedFaceImage, windowedFaceImage);
+        return windowedFaceImage;
+    }
+
+    @Benchmark
+    public Mat getMagnitudeSpectrum() {
+        try (MatScope scope = MatScope.open()) {
+            return OpenCVUtils.getMagnitudeSpectrum(grayFaceImage);
+        }
+    }
+
+    private Rect detectFace(Mat image) {
+        return OpenCVUtils.detectBiggestFeatureRect(image, faceClassifier, FACE_DETECTION_MAX_SIZE, FACE_DETECTION_SCALE_FACTOR, FACE_DETECTION_MIN_NEIGHBORS, FACE_DETECTION_MIN_SIZE);
+    }
+}
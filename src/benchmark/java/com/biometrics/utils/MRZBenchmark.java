@@ -0,0 +1,80 @@
+package com.biometrics.utils;
+
+import com.biometrics.BaseBenchmark;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+
+@State(Scope.Thread)
+public class MRZBenchmark extends BaseBenchmark {
+
+    @Param({"documents/mrz/mrz1.jpeg", "documents/mrz/mrz10.jpeg"})
+    public String fixture;
+
+    private byte[] imageBytes;
+    private Mat image;
+    private Mat mrzImage;
+    private BufferedImage mrzBufferedImage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        imageBytes = getImageFromResource(fixture);
+        image = OpenCVUtils.getScaledImage(imageBytes, MRZUtils.IMAGE_MIN_SIZE);
+        mrzImage = MRZUtils.detectCode(image);
+        mrzBufferedImage = mrzImage != null ? OpenCVUtils.getBufferedImage(mrzImage) : null;
+    }
+
+    @Benchmark
+    public String readCode() {
+        return MRZUtils.readCode(imageBytes);
+    }
+
+    @Benchmark
+    public String scanCode() {
+        return MRZUtils.scanCode(imageBytes);
+    }
+
+    @Benchmark
+    public Mat decodeImage() {
+        try (MatScope scope = MatScope.open()) {
+            return OpenCVUtils.getScaledImage(imageBytes, MRZUtils.IMAGE_MIN_SIZE);
+        }
+    }
+
+    @Benchmark
+    public Mat detectCode() {
+        try (MatScope scope = MatScope.open()) {
+            return MRZUtils.detectCode(image);
+        }
+    }
+
+    @Benchmark
+    public boolean detectOrientation() {
+        return mrzImage != null && MRZUtils.isRotated(mrzImage);
+    }
+
+    @Benchmark
+    public List<Mat> detectLines() {
+        try (MatScope scope = MatScope.open()) {
+            return MRZUtils.detectLines(mrzImage);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage getBufferedImage() {
+        return mrzImage != null ? OpenCVUtils.getBufferedImage(mrzImage) : null;
+    }
+
+    @Benchmark
+    public String recognizeCode() {
+        return mrzBufferedImage != null ? MRZUtils.readCode(mrzBufferedImage) : null;
+    }
+
+    @Benchmark
+    public String recognizeLines() {
+        return mrzImage != null ? MRZUtils.readCode(mrzImage) : null;
+    }
+}
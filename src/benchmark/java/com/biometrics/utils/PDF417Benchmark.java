@@ -0,0 +1,64 @@
+package com.biometrics.utils;
+
+import com.biometrics.BaseBenchmark;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+
+@State(Scope.Thread)
+public class PDF417Benchmark extends BaseBenchmark {
+
+    @Param({"documents/barcode/barcode1.jpeg", "documents/barcode/barcode2.jpeg"})
+    public String fixture;
+
+    private byte[] imageBytes;
+    private Mat image;
+    private Mat barcodeImage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        imageBytes = getImageFromResource(fixture);
+        image = OpenCVUtils.getScaledImage(imageBytes, PDF417Utils.IMAGE_MIN_SIZE);
+        for (Mat candidateImage : PDF417Utils.detectCode(image)) {
+            if (barcodeImage == null || PDF417Utils.readCode(candidateImage) != null) {
+                barcodeImage = candidateImage;
+            }
+        }
+    }
+
+    @Benchmark
+    public String readCode() {
+        return PDF417Utils.readCode(imageBytes);
+    }
+
+    @Benchmark
+    public String scanCode() {
+        return PDF417Utils.scanCode(imageBytes);
+    }
+
+    @Benchmark
+    public Mat decodeImage() {
+        try (MatScope scope = MatScope.open()) {
+            return OpenCVUtils.getScaledImage(imageBytes, PDF417Utils.IMAGE_MIN_SIZE);
+        }
+    }
+
+    @Benchmark
+    public List<Mat> detectCode() {
+        try (MatScope scope = MatScope.open()) {
+            return PDF417Utils.detectCode(image);
+        }
+    }
+
+    @Benchmark
+    public MatLuminanceSource getLuminanceSource() {
+        return barcodeImage != null ? new MatLuminanceSource(barcodeImage) : null;
+    }
+
+    @Benchmark
+    public String decodeCode() {
+        return barcodeImage != null ? PDF417Utils.readCode(barcodeImage) : null;
+    }
+}
@@ -0,0 +1,195 @@
+package com.biometrics;
+
+import com.biometrics.exceptions.RequestRejectedException;
+import org.neogroup.warp.http.Request;
+import org.neogroup.warp.http.StatusCode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public abstract class AdmissionControl {
+
+    private static final String CLIENT_RATE_LIMIT_PROPERTY_NAME = "client_rate_limit";
+    private static final String CLIENT_RATE_LIMIT_BURST_PROPERTY_NAME = "client_rate_limit_burst";
+    private static final String CLIENT_BATCH_MAX_CONCURRENCY_PROPERTY_NAME = "client_batch_max_concurrency";
+    private static final String ENDPOINT_MAX_CONCURRENCY_PROPERTY_NAME = "endpoint_max_concurrency";
+    private static final String ENDPOINT_MAX_QUEUE_PROPERTY_NAME = "endpoint_max_queue";
+    private static final String ENDPOINT_QUEUE_TIMEOUT_PROPERTY_NAME = "endpoint_queue_timeout";
+    private static final String ADMISSION_PERMIT_PARAMETER_NAME = "admissionPermit";
+
+    private static final int TOO_MANY_REQUESTS_STATUS_CODE = 429;
+
+    private static final double CLIENT_RATE_LIMIT = Configuration.getDouble(CLIENT_RATE_LIMIT_PROPERTY_NAME, 0);
+    private static final double CLIENT_RATE_LIMIT_BURST = Configuration.getDouble(CLIENT_RATE_LIMIT_BURST_PROPERTY_NAME, 20);
+    private static final int CLIENT_BATCH_MAX_CONCURRENCY = Configuration.getInt(CLIENT_BATCH_MAX_CONCURRENCY_PROPERTY_NAME, Runtime.getRuntime().availableProcessors());
+    private static final int ENDPOINT_MAX_CONCURRENCY = Configuration.getInt(ENDPOINT_MAX_CONCURRENCY_PROPERTY_NAME, Runtime.getRuntime().availableProcessors());
+    private static final int ENDPOINT_MAX_QUEUE = Configuration.getInt(ENDPOINT_MAX_QUEUE_PROPERTY_NAME, Runtime.getRuntime().availableProcessors());
+    private static final long ENDPOINT_QUEUE_TIMEOUT = Configuration.getLong(ENDPOINT_QUEUE_TIMEOUT_PROPERTY_NAME, 1000);
+
+    private static final Map<String, TokenBucket> CLIENT_BUCKETS = new ConcurrentHashMap<>();
+    private static final Map<String, Semaphore> CLIENT_BATCH_PERMITS = new ConcurrentHashMap<>();
+    private static final Map<String, EndpointLimit> ENDPOINT_LIMITS = new ConcurrentHashMap<>();
+
+    public static void admit(Request request, String clientId, String endpoint) {
+        // Límite de peticiones por cliente
+        TokenBucket clientBucket = null;
+        if (CLIENT_RATE_LIMIT > 0) {
+            clientBucket = getClientBucket(clientId);
+            long waitNanos = clientBucket.tryConsume();
+            if (waitNanos > 0) {
+                Metrics.increment("admission_requests", "client", clientId, "result", "rate_limited");
+                throw new RequestRejectedException("Request rate limit exceeded, try again later", TOO_MANY_REQUESTS_STATUS_CODE, getRetryAfter(waitNanos));
+            }
+        }
+
+        // Límite de peticiones simultaneas por endpoint, con una cola de espera corta
+        if (ENDPOINT_MAX_CONCURRENCY > 0) {
+            EndpointLimit endpointLimit = ENDPOINT_LIMITS.computeIfAbsent(endpoint, key -> new EndpointLimit(key, ENDPOINT_MAX_CONCURRENCY, ENDPOINT_MAX_QUEUE));
+            String rejectionReason = endpointLimit.acquire(ENDPOINT_QUEUE_TIMEOUT);
+            if (rejectionReason != null) {
+                // La petición rechazada por sobrecarga no se procesa, por lo que no consume el token del cliente
+                if (clientBucket != null) {
+                    clientBucket.refund();
+                }
+                Metrics.increment("admission_requests", "client", clientId, "result", "overloaded");
+                Metrics.increment("admission_rejections", "endpoint", endpoint, "reason", rejectionReason);
+                throw new RequestRejectedException("Server too busy, try again later", StatusCode.SERVICE_UNAVAILABLE, 1);
+            }
+            request.set(ADMISSION_PERMIT_PARAMETER_NAME, endpointLimit);
+        }
+        Metrics.increment("admission_requests", "client", clientId, "result", "admitted");
+    }
+
+    public static boolean admitBatchItem(String clientId) {
+        // Cada par de un lote consume un token del cliente como una petición más, esperando a que se reponga en lugar de
+        // rechazar un lote que ya empezó a responder, y los pares en curso de todos los lotes de un cliente se limitan
+        // para que un solo cliente no ocupe todos los workers
+        Semaphore batchPermits = CLIENT_BATCH_MAX_CONCURRENCY > 0 ? CLIENT_BATCH_PERMITS.computeIfAbsent(clientId, key -> new Semaphore(CLIENT_BATCH_MAX_CONCURRENCY, true)) : null;
+        boolean permitAcquired = false;
+        boolean admitted = false;
+        try {
+            if (batchPermits != null) {
+                batchPermits.acquire();
+                permitAcquired = true;
+            }
+            if (CLIENT_RATE_LIMIT > 0) {
+                TokenBucket bucket = getClientBucket(clientId);
+                long waitNanos;
+                while ((waitNanos = bucket.tryConsume()) > 0) {
+                    Metrics.increment("admission_batch_items", "client", clientId, "result", "rate_limited");
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+            admitted = true;
+            Metrics.increment("admission_batch_items", "client", clientId, "result", "admitted");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (permitAcquired) {
+                batchPermits.release();
+            }
+        }
+        return admitted;
+    }
+
+    public static void releaseBatchItem(String clientId) {
+        Semaphore batchPermits = CLIENT_BATCH_PERMITS.get(clientId);
+        if (batchPermits != null) {
+            batchPermits.release();
+        }
+    }
+
+    public static void release(Request request) {
+        EndpointLimit endpointLimit = request.get(ADMISSION_PERMIT_PARAMETER_NAME);
+        if (endpointLimit != null) {
+            request.set(ADMISSION_PERMIT_PARAMETER_NAME, null);
+            endpointLimit.release();
+        }
+    }
+
+    private static TokenBucket getClientBucket(String clientId) {
+        return CLIENT_BUCKETS.computeIfAbsent(clientId, key -> new TokenBucket(CLIENT_RATE_LIMIT, Math.max(1, CLIENT_RATE_LIMIT_BURST)));
+    }
+
+    static long getRetryAfter(long waitNanos) {
+        return Math.max(1, (long)Math.ceil(waitNanos / 1e9));
+    }
+
+    static final class TokenBucket {
+
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillTime;
+
+        TokenBucket(double rate, double capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillTime = System.nanoTime();
+        }
+
+        synchronized long tryConsume() {
+            long currentTime = System.nanoTime();
+            tokens = Math.min(capacity, tokens + ((currentTime - lastRefillTime) / 1e9) * rate);
+            lastRefillTime = currentTime;
+            long waitNanos = 0;
+            if (tokens >= 1) {
+                tokens -= 1;
+            } else {
+                waitNanos = (long)Math.ceil(((1 - tokens) / rate) * 1e9);
+            }
+            return waitNanos;
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+
+    static final class EndpointLimit {
+
+        private final String endpoint;
+        private final Semaphore permits;
+        private final int maxQueue;
+        private final AtomicInteger queued;
+
+        EndpointLimit(String endpoint, int maxConcurrency, int maxQueue) {
+            this.endpoint = endpoint;
+            this.permits = new Semaphore(maxConcurrency, true);
+            this.maxQueue = maxQueue;
+            this.queued = new AtomicInteger();
+            Metrics.registerGauge("admission_in_flight", () -> maxConcurrency - permits.availablePermits(), "endpoint", endpoint);
+            Metrics.registerGauge("admission_queued", queued::get, "endpoint", endpoint);
+        }
+
+        String acquire(long timeout) {
+            String rejectionReason = null;
+            if (!permits.tryAcquire()) {
+                if (queued.incrementAndGet() > maxQueue) {
+                    rejectionReason = "queue_full";
+                } else {
+                    long startTime = System.nanoTime();
+                    try {
+                        if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                            rejectionReason = "queue_timeout";
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        rejectionReason = "interrupted";
+                    } finally {
+                        Metrics.recordTime("admission_queue_wait", System.nanoTime() - startTime, "endpoint", endpoint);
+                    }
+                }
+                queued.decrementAndGet();
+            }
+            return rejectionReason;
+        }
+
+        void release() {
+            permits.release();
+        }
+    }
+}
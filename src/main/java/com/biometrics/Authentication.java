@@ -6,9 +6,11 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
-import java.util.Date;
+import java.util.*;
 
 import static org.neogroup.warp.Warp.getProperty;
 
@@ -17,10 +19,32 @@ public abstract class Authentication {
     public static final String CLIENT_ID_CLAIM_NAME = "clientId";
     public static final String ALLOWED_HOSTS_CLAIM_NAME = "allowedHosts";
     public static final String ALLOWED_IPS_CLAIM_NAME = "allowedIps";
+    public static final String SKIP_AUDIT_CLAIM_NAME = "skipAudit";
 
     private static final String JWT_SECRET_KEY_PROPERTY_NAME = "api_key_secret_key";
+    private static final String TOKEN_CACHE_MAX_ENTRIES_PROPERTY_NAME = "auth_token_cache_max_entries";
+    private static final String TOKEN_CACHE_NAME = "auth_token_cache";
     private static final Algorithm AUTHENTICATION_ALGORITHM = Algorithm.HMAC256(getProperty(JWT_SECRET_KEY_PROPERTY_NAME));
     private static final JWTVerifier AUTHENTICATION_VERIFIER = JWT.require(AUTHENTICATION_ALGORITHM).withIssuer("auth0").build();
+    private static final int TOKEN_CACHE_MAX_ENTRIES = Configuration.getInt(TOKEN_CACHE_MAX_ENTRIES_PROPERTY_NAME, 10000);
+    private static final Map<String, VerifiedToken> TOKEN_CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+            boolean remove = size() > TOKEN_CACHE_MAX_ENTRIES;
+            if (remove) {
+                Metrics.increment(TOKEN_CACHE_NAME + "_evictions");
+            }
+            return remove;
+        }
+    };
+
+    static {
+        Metrics.registerGauge(TOKEN_CACHE_NAME + "_entries", () -> {
+            synchronized (TOKEN_CACHE) {
+                return TOKEN_CACHE.size();
+            }
+        });
+    }
 
     public static String createToken(int clientId) throws JWTCreationException {
         return createToken(clientId, null, null, null);
@@ -39,6 +63,10 @@ public abstract class Authentication {
     }
 
     public static String createToken(int clientId, Date expirationDate, String[] allowedHosts, String[] allowedIps) throws JWTCreationException {
+        return createToken(clientId, expirationDate, allowedHosts, allowedIps, false);
+    }
+
+    public static String createToken(int clientId, Date expirationDate, String[] allowedHosts, String[] allowedIps, boolean skipAuditAllowed) throws JWTCreationException {
         JWTCreator.Builder tokenBuilder = JWT.create().withIssuer("auth0");
         tokenBuilder.withClaim(CLIENT_ID_CLAIM_NAME, clientId);
         if (expirationDate != null) {
@@ -50,10 +78,87 @@ public abstract class Authentication {
         if (allowedIps != null && allowedIps.length > 0) {
             tokenBuilder.withArrayClaim(ALLOWED_IPS_CLAIM_NAME, allowedIps);
         }
+        if (skipAuditAllowed) {
+            tokenBuilder.withClaim(SKIP_AUDIT_CLAIM_NAME, true);
+        }
         return tokenBuilder.sign(AUTHENTICATION_ALGORITHM);
     }
 
     public static DecodedJWT decodeToken(String token) throws JWTVerificationException {
         return AUTHENTICATION_VERIFIER.verify(token);
     }
+
+    public static VerifiedToken verifyToken(String token) throws JWTVerificationException {
+        VerifiedToken verifiedToken = null;
+        if (TOKEN_CACHE_MAX_ENTRIES > 0) {
+            synchronized (TOKEN_CACHE) {
+                verifiedToken = TOKEN_CACHE.get(token);
+                if (verifiedToken != null && verifiedToken.isExpired()) {
+                    TOKEN_CACHE.remove(token);
+                    Metrics.increment(TOKEN_CACHE_NAME + "_expirations");
+                    throw new TokenExpiredException("The Token has expired on " + new Date(verifiedToken.expirationTime) + ".");
+                }
+            }
+        }
+        if (verifiedToken != null) {
+            Metrics.increment(TOKEN_CACHE_NAME + "_hits");
+        } else {
+            Metrics.increment(TOKEN_CACHE_NAME + "_misses");
+            verifiedToken = new VerifiedToken(decodeToken(token));
+            if (TOKEN_CACHE_MAX_ENTRIES > 0) {
+                synchronized (TOKEN_CACHE) {
+                    TOKEN_CACHE.put(token, verifiedToken);
+                }
+            }
+        }
+        return verifiedToken;
+    }
+
+    public static final class VerifiedToken {
+
+        private final Integer clientId;
+        private final Set<String> allowedHosts;
+        private final Set<String> allowedIps;
+        private final boolean skipAuditAllowed;
+        private final long expirationTime;
+
+        private VerifiedToken(DecodedJWT token) {
+            Date expirationDate = token.getExpiresAt();
+            clientId = token.getClaim(CLIENT_ID_CLAIM_NAME).asInt();
+            allowedHosts = getClaimValues(token.getClaim(ALLOWED_HOSTS_CLAIM_NAME));
+            allowedIps = getClaimValues(token.getClaim(ALLOWED_IPS_CLAIM_NAME));
+            skipAuditAllowed = Boolean.TRUE.equals(token.getClaim(SKIP_AUDIT_CLAIM_NAME).asBoolean());
+            expirationTime = expirationDate != null ? expirationDate.getTime() : Long.MAX_VALUE;
+        }
+
+        public Integer getClientId() {
+            return clientId;
+        }
+
+        public boolean isHostAllowed(String host) {
+            return allowedHosts == null || allowedHosts.contains(host);
+        }
+
+        public boolean isIpAllowed(String ip) {
+            return allowedIps == null || allowedIps.contains(ip);
+        }
+
+        public boolean isSkipAuditAllowed() {
+            return skipAuditAllowed;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expirationTime;
+        }
+
+        private static Set<String> getClaimValues(Claim claim) {
+            Set<String> values = null;
+            if (!claim.isNull()) {
+                // Un claim presente pero con formato inválido no permite ningún valor
+                String[] claimValues = claim.asArray(String.class);
+                values = claimValues != null ? new HashSet<>(Arrays.asList(claimValues)) : Collections.emptySet();
+            }
+            return values;
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package com.biometrics;
+
+import static org.neogroup.warp.Warp.getProperty;
+
+public abstract class Configuration {
+
+    public static String getString(String propertyName, String defaultValue) {
+        String value = System.getenv(propertyName.toUpperCase());
+        if (value == null || value.isEmpty()) {
+            value = getProperty(propertyName);
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String propertyName, int defaultValue) {
+        String value = getString(propertyName, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException ex) {
+            throw new RuntimeException("Invalid integer value \"" + value + "\" for property \"" + propertyName + "\"");
+        }
+    }
+
+    public static long getLong(String propertyName, long defaultValue) {
+        String value = getString(propertyName, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException ex) {
+            throw new RuntimeException("Invalid long value \"" + value + "\" for property \"" + propertyName + "\"");
+        }
+    }
+
+    public static double getDouble(String propertyName, double defaultValue) {
+        String value = getString(propertyName, null);
+        try {
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        } catch (NumberFormatException ex) {
+            throw new RuntimeException("Invalid double value \"" + value + "\" for property \"" + propertyName + "\"");
+        }
+    }
+
+    public static boolean getBoolean(String propertyName, boolean defaultValue) {
+        String value = getString(propertyName, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
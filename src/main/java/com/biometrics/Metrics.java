@@ -0,0 +1,138 @@
+package com.biometrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+public abstract class Metrics {
+
+    private static final double[] TIMER_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, DoubleSupplier>> GAUGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, Timer>> TIMERS = new ConcurrentSkipListMap<>();
+
+    public static void increment(String counterName, String... labels) {
+        increment(counterName, 1, labels);
+    }
+
+    public static void increment(String counterName, long amount, String... labels) {
+        COUNTERS.computeIfAbsent(counterName, name -> new ConcurrentSkipListMap<>()).computeIfAbsent(getLabelsKey(labels), key -> new LongAdder()).add(amount);
+    }
+
+    public static long getCount(String counterName, String... labels) {
+        Map<String, LongAdder> counters = COUNTERS.get(counterName);
+        LongAdder counter = counters != null ? counters.get(getLabelsKey(labels)) : null;
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public static void registerGauge(String gaugeName, DoubleSupplier gaugeSupplier, String... labels) {
+        GAUGES.computeIfAbsent(gaugeName, name -> new ConcurrentSkipListMap<>()).put(getLabelsKey(labels), gaugeSupplier);
+    }
+
+    public static void recordTime(String timerName, long nanos, String... labels) {
+        TIMERS.computeIfAbsent(timerName, name -> new ConcurrentSkipListMap<>()).computeIfAbsent(getLabelsKey(labels), key -> new Timer()).record(nanos);
+    }
+
+    public static <T> T time(String timerName, Supplier<T> task, String... labels) {
+        long startTime = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            recordTime(timerName, System.nanoTime() - startTime, labels);
+        }
+    }
+
+    public static Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        COUNTERS.forEach((name, counters) -> counters.forEach((labelsKey, counter) -> snapshot.put(getMetricKey(name, labelsKey), counter.sum())));
+        GAUGES.forEach((name, gauges) -> gauges.forEach((labelsKey, gauge) -> snapshot.put(getMetricKey(name, labelsKey), gauge.getAsDouble())));
+        TIMERS.forEach((name, timers) -> timers.forEach((labelsKey, timer) -> {
+            snapshot.put(getMetricKey(name + "_count", labelsKey), timer.count.sum());
+            snapshot.put(getMetricKey(name + "_seconds_sum", labelsKey), timer.nanos.sum() / 1e9);
+            snapshot.put(getMetricKey(name + "_seconds_max", labelsKey), timer.maxNanos.get() / 1e9);
+        }));
+        return snapshot;
+    }
+
+    public static String getPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        COUNTERS.forEach((name, counters) -> {
+            text.append("# TYPE ").append(name).append(" counter\n");
+            counters.forEach((labelsKey, counter) -> text.append(getMetricKey(name, labelsKey)).append(' ').append(counter.sum()).append('\n'));
+        });
+        GAUGES.forEach((name, gauges) -> {
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            gauges.forEach((labelsKey, gauge) -> text.append(getMetricKey(name, labelsKey)).append(' ').append(gauge.getAsDouble()).append('\n'));
+        });
+        TIMERS.forEach((name, timers) -> {
+            String histogramName = name + "_seconds";
+            text.append("# TYPE ").append(histogramName).append(" histogram\n");
+            timers.forEach((labelsKey, timer) -> {
+                String bucketLabelsPrefix = labelsKey.isEmpty() ? "" : labelsKey + ",";
+                long cumulativeCount = 0;
+                for (int i = 0; i < TIMER_BUCKETS.length; i++) {
+                    cumulativeCount += timer.buckets[i].sum();
+                    text.append(getMetricKey(histogramName + "_bucket", bucketLabelsPrefix + "le=\"" + TIMER_BUCKETS[i] + "\"")).append(' ').append(cumulativeCount).append('\n');
+                }
+                long count = timer.count.sum();
+                text.append(getMetricKey(histogramName + "_bucket", bucketLabelsPrefix + "le=\"+Inf\"")).append(' ').append(count).append('\n');
+                text.append(getMetricKey(histogramName + "_sum", labelsKey)).append(' ').append(timer.nanos.sum() / 1e9).append('\n');
+                text.append(getMetricKey(histogramName + "_count", labelsKey)).append(' ').append(count).append('\n');
+            });
+            text.append("# TYPE ").append(histogramName).append("_max gauge\n");
+            timers.forEach((labelsKey, timer) -> text.append(getMetricKey(histogramName + "_max", labelsKey)).append(' ').append(timer.maxNanos.get() / 1e9).append('\n'));
+        });
+        return text.toString();
+    }
+
+    private static String getMetricKey(String name, String labelsKey) {
+        return labelsKey.isEmpty() ? name : name + "{" + labelsKey + "}";
+    }
+
+    private static String getLabelsKey(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Metric labels must be name/value pairs");
+        }
+        StringBuilder labelsKey = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                labelsKey.append(',');
+            }
+            String labelValue = labels[i + 1] != null ? labels[i + 1] : "";
+            labelsKey.append(labels[i]).append("=\"").append(labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return labelsKey.toString();
+    }
+
+    private static final class Timer {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[TIMER_BUCKETS.length];
+
+        private Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long elapsedNanos) {
+            count.increment();
+            nanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+            double elapsedSeconds = elapsedNanos / 1e9;
+            for (int i = 0; i < TIMER_BUCKETS.length; i++) {
+                if (elapsedSeconds <= TIMER_BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+        }
+    }
+}
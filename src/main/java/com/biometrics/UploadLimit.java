@@ -0,0 +1,45 @@
+package com.biometrics;
+
+import com.biometrics.exceptions.ResponseException;
+
+public abstract class UploadLimit {
+
+    private static final String MAX_UPLOAD_SIZE_PROPERTY_NAME = "max_upload_size";
+    private static final String LIVENESS_BATCH_MAX_SIZE_PROPERTY_NAME = "liveness_batch_max_size";
+
+    private static final int PAYLOAD_TOO_LARGE_STATUS_CODE = 413;
+
+    private static final long MAX_UPLOAD_SIZE = Configuration.getLong(MAX_UPLOAD_SIZE_PROPERTY_NAME, 10485760);
+    private static final long LIVENESS_BATCH_MAX_SIZE = Configuration.getLong(LIVENESS_BATCH_MAX_SIZE_PROPERTY_NAME, 268435456);
+
+    public static long getMaxUploadSize() {
+        return MAX_UPLOAD_SIZE;
+    }
+
+    public static void check(byte[]... uploads) {
+        // Tamaño total de los archivos ya leídos, ya que sin Content-Length (subidas chunked) no se pueden rechazar antes
+        long uploadSize = 0;
+        for (byte[] upload : uploads) {
+            if (upload != null) {
+                uploadSize += upload.length;
+            }
+        }
+        check(uploadSize);
+    }
+
+    public static void check(long uploadSize) {
+        check(uploadSize, MAX_UPLOAD_SIZE);
+    }
+
+    public static void checkBatch(long batchSize) {
+        // Los lotes de liveness tienen su propio límite, ya que agrupan cientos de pares de imagenes
+        check(batchSize, LIVENESS_BATCH_MAX_SIZE);
+    }
+
+    private static void check(long uploadSize, long maxUploadSize) {
+        if (maxUploadSize > 0 && uploadSize > maxUploadSize) {
+            Metrics.increment("http_uploads_rejected");
+            throw new ResponseException("Upload size exceeds the maximum of " + maxUploadSize + " bytes", PAYLOAD_TOO_LARGE_STATUS_CODE);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.biometrics.controllers;
 
 import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.impl.NullClaim;
-import com.auth0.jwt.interfaces.Claim;
-import com.auth0.jwt.interfaces.DecodedJWT;
+import com.biometrics.AdmissionControl;
 import com.biometrics.Authentication;
+import com.biometrics.Configuration;
+import com.biometrics.Metrics;
+import com.biometrics.UploadLimit;
+import com.biometrics.data.LivenessAuditWriter;
 import com.biometrics.exceptions.ResponseException;
 import com.biometrics.resources.LivenessResource;
+import com.biometrics.utils.ExecutorUtils;
 import com.biometrics.utils.LivenessUtils;
+import com.biometrics.utils.MatScope;
 import com.biometrics.utils.MRZUtils;
 import com.biometrics.utils.OpenCVUtils;
 import com.biometrics.utils.PDF417Utils;
@@ -22,16 +26,28 @@ import org.neogroup.warp.http.Header;
 import org.neogroup.warp.http.Request;
 import org.neogroup.warp.http.Response;
 import org.neogroup.warp.http.StatusCode;
-import org.neogroup.warp.resources.Resources;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 import org.opencv.objdetect.CascadeClassifier;
 
-import java.util.Date;
-import java.util.Map;
-
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.neogroup.warp.Warp.getLogger;
 import static org.neogroup.warp.Warp.getProperty;
 import static org.neogroup.warp.Warp.getRequest;
+import static org.neogroup.warp.Warp.getResponse;
 
 @ControllerComponent("api")
 public class ApiController {
@@ -53,21 +69,63 @@ public class ApiController {
     private static final String INFORMATION_PROPERTY_NAME = "information";
     private static final String LIVENESS_PROPERTY_NAME = "liveness";
     private static final String STATUS_PROPERTY_NAME = "status";
+    private static final String ID_PROPERTY_NAME = "id";
+    private static final String ERROR_PROPERTY_NAME = "error";
     private static final String CLIENT_ID_PARAMETER_NAME = "client";
     private static final String IP_PARAMETER_NAME = "ip";
     private static final String HOST_PARAMETER_NAME = "host";
     private static final String TIMESTAMP_PARAMETER_NAME = "timestamp";
+    private static final String SKIP_AUDIT_ALLOWED_PARAMETER_NAME = "skipAuditAllowed";
+
+    private static final String VERIFY_LIVENESS_ENDPOINT = "verify_liveness";
+    private static final String VERIFY_LIVENESS_BATCH_ENDPOINT = "verify_liveness_batch";
+    private static final String SCAN_DOCUMENT_DATA_ENDPOINT = "scan_document_data";
+    private static final String SCAN_BARCODE_DATA_ENDPOINT = "scan_barcode_data";
+    private static final String SCAN_MRZ_DATA_ENDPOINT = "scan_mrz_data";
+    private static final Set<String> ADMISSION_CONTROLLED_ENDPOINTS = Set.of(VERIFY_LIVENESS_ENDPOINT, VERIFY_LIVENESS_BATCH_ENDPOINT, SCAN_DOCUMENT_DATA_ENDPOINT, SCAN_BARCODE_DATA_ENDPOINT, SCAN_MRZ_DATA_ENDPOINT);
 
     private static final String PROTOCOL_SEPARATOR = "://";
     private static final String PATH_SEPARATOR = "/";
     private static final String PORT_SEPARATOR = ":";
     private static final char IP_SEPARATOR = ',';
     private static final String AUTHORIZATION_BEARER = "Bearer";
-
-    private final CascadeClassifier faceClassfier;
+    private static final String SKIP_AUDIT_HEADER_NAME = "X-Skip-Audit";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final String PICTURE_ENTRY_NAME = "picture";
+    private static final String ZOOMED_PICTURE_ENTRY_NAME = "zoomedPicture";
+    private static final String NEW_LINE = "\n";
+    private static final char EXTENSION_SEPARATOR = '.';
+    private static final int PAYLOAD_TOO_LARGE_STATUS_CODE = 413;
+
+    private static final String LIVENESS_STAGE_TIMER_NAME = "liveness_stage";
+    private static final String STAGE_LABEL_NAME = "stage";
+
+    private static final String LIVENESS_PIPELINE_THREADS_PROPERTY_NAME = "liveness_pipeline_threads";
+    private static final String FACE_DETECTION_MAX_SIZE_PROPERTY_NAME = "face_detection_max_size";
+    private static final String FACE_DETECTION_SCALE_FACTOR_PROPERTY_NAME = "face_detection_scale_factor";
+    private static final String FACE_DETECTION_MIN_NEIGHBORS_PROPERTY_NAME = "face_detection_min_neighbors";
+    private static final String FACE_DETECTION_MIN_SIZE_PROPERTY_NAME = "face_detection_min_size";
+    private static final int FACE_DETECTION_MAX_SIZE = Configuration.getInt(FACE_DETECTION_MAX_SIZE_PROPERTY_NAME, 800);
+    private static final double FACE_DETECTION_SCALE_FACTOR = Configuration.getDouble(FACE_DETECTION_SCALE_FACTOR_PROPERTY_NAME, 1.1);
+    private static final int FACE_DETECTION_MIN_NEIGHBORS = Configuration.getInt(FACE_DETECTION_MIN_NEIGHBORS_PROPERTY_NAME, 3);
+    private static final double FACE_DETECTION_MIN_SIZE = Configuration.getDouble(FACE_DETECTION_MIN_SIZE_PROPERTY_NAME, 0.1);
+    private static final String LIVENESS_BATCH_THREADS_PROPERTY_NAME = "liveness_batch_threads";
+    private static final String LIVENESS_BATCH_MAX_ENTRIES_PROPERTY_NAME = "liveness_batch_max_entries";
+    private static final ExecutorService LIVENESS_EXECUTOR = ExecutorUtils.createBoundedExecutor("liveness_pipeline", Configuration.getInt(LIVENESS_PIPELINE_THREADS_PROPERTY_NAME, Runtime.getRuntime().availableProcessors()), 64);
+    private static final int LIVENESS_BATCH_THREADS = Math.max(1, Configuration.getInt(LIVENESS_BATCH_THREADS_PROPERTY_NAME, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService LIVENESS_BATCH_EXECUTOR = ExecutorUtils.createBoundedExecutor("liveness_batch", LIVENESS_BATCH_THREADS, LIVENESS_BATCH_THREADS);
+    private static final int LIVENESS_BATCH_MAX_ENTRIES = Configuration.getInt(LIVENESS_BATCH_MAX_ENTRIES_PROPERTY_NAME, 200);
+
+    private final ThreadLocal<CascadeClassifier> faceClassfier;
+    private final int faceDetectionMaxSize;
 
     public ApiController() {
-        faceClassfier = OpenCVUtils.getClassfierFromResource("cascades/face.xml");
+        this(FACE_DETECTION_MAX_SIZE);
+    }
+
+    public ApiController(int faceDetectionMaxSize) {
+        this.faceClassfier = ThreadLocal.withInitial(() -> OpenCVUtils.getClassfierFromResource("cascades/face.xml"));
+        this.faceDetectionMaxSize = faceDetectionMaxSize;
     }
 
     @Before("*")
@@ -88,89 +146,97 @@ public class ApiController {
         }
         String token = authorizationTokens[1];
         try {
-            DecodedJWT verifiedToken = Authentication.decodeToken(token);
+            Authentication.VerifiedToken verifiedToken = Authentication.verifyToken(token);
             String ip = getClientIp(request);
             String host = getHost(request);
-            request.set(CLIENT_ID_PARAMETER_NAME, verifiedToken.getClaim(Authentication.CLIENT_ID_CLAIM_NAME).asInt());
+            request.set(CLIENT_ID_PARAMETER_NAME, verifiedToken.getClientId());
             request.set(IP_PARAMETER_NAME, ip);
             request.set(TIMESTAMP_PARAMETER_NAME, System.currentTimeMillis());
             request.set(HOST_PARAMETER_NAME, host);
+            request.set(SKIP_AUDIT_ALLOWED_PARAMETER_NAME, verifiedToken.isSkipAuditAllowed());
 
-            Claim allowedIpsClaim = verifiedToken.getClaim(Authentication.ALLOWED_IPS_CLAIM_NAME);
-            if (!(allowedIpsClaim instanceof NullClaim)) {
-                String[] allowedIps = allowedIpsClaim.asArray(String.class);
-                boolean allowed = false;
-                for (String allowedIp : allowedIps) {
-                    if (allowedIp.equals(ip)) {
-                        allowed = true;
-                        break;
-                    }
-                }
-                if (!allowed) {
-                    throw new JWTVerificationException("Ip \"" + ip + "\" is not allowed !!");
-                }
+            if (!verifiedToken.isIpAllowed(ip)) {
+                throw new JWTVerificationException("Ip \"" + ip + "\" is not allowed !!");
             }
-
-            Claim allowedHostsClaim = verifiedToken.getClaim(Authentication.ALLOWED_HOSTS_CLAIM_NAME);
-            if (!(allowedHostsClaim instanceof NullClaim)) {
-                String[] allowedHosts = allowedHostsClaim.asArray(String.class);
-                boolean allowed = false;
-                for (String allowedHost : allowedHosts) {
-                    if (allowedHost.equals(host)) {
-                        allowed = true;
-                        break;
-                    }
-                }
-                if (!allowed) {
-                    throw new JWTVerificationException("Host \"" + host + "\" is not allowed !!");
-                }
+            if (!verifiedToken.isHostAllowed(host)) {
+                throw new JWTVerificationException("Host \"" + host + "\" is not allowed !!");
             }
 
+            // Control de admisión de las peticiones costosas de cada cliente
+            String path = request.getPath();
+            String endpoint = path != null ? path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1) : "";
+            if (ADMISSION_CONTROLLED_ENDPOINTS.contains(endpoint)) {
+                AdmissionControl.admit(request, String.valueOf(verifiedToken.getClientId()), endpoint);
+            }
         } catch (JWTVerificationException verificationException) {
             response.setStatus(StatusCode.UNAUTHORIZED);
             throw new ResponseException("Invalid authorization token (" + verificationException.getMessage() + ")");
         }
     }
 
-    @Post("verify_liveness")
+    @Post(VERIFY_LIVENESS_ENDPOINT)
     public DataObject verifyLiveness(@Param("picture") byte[] imageBytes, @Param("zoomedPicture") byte[] zoomedImageBytes) {
+        UploadLimit.check(imageBytes, zoomedImageBytes);
         int status = verifyLivenessImages(imageBytes, zoomedImageBytes);
-        DataObject response = Data.object();
-        boolean success = status == LIVENESS_OK_STATUS_CODE;
-        if (success) {
-            response.set(LIVENESS_PROPERTY_NAME, true);
-        } else {
-            response.set(LIVENESS_PROPERTY_NAME, false);
-            response.set(STATUS_PROPERTY_NAME, status);
-        }
-        try {
-            Request request = getRequest();
-            Resources.get(LivenessResource.NAME)
-                    .set(LivenessResource.Fields.FACE_IMAGE, imageBytes)
-                    .set(LivenessResource.Fields.ZOOMED_FACE_IMAGE, zoomedImageBytes)
-                    .set(LivenessResource.Fields.SUCCESS, success)
-                    .set(LivenessResource.Fields.STATUS, status)
-                    .set(LivenessResource.Fields.DATE, new Date())
-                    .set(LivenessResource.Fields.VERSION, getProperty("appVersion"))
-                    .set(LivenessResource.Fields.CLIENT_ID, request.get(CLIENT_ID_PARAMETER_NAME))
-                    .set(LivenessResource.Fields.IP_ADDRESS, request.get(IP_PARAMETER_NAME))
-                    .set(LivenessResource.Fields.HOST, request.get(HOST_PARAMETER_NAME))
-                    .set(LivenessResource.Fields.DEVICE, request.getHeader(Header.USER_AGENT))
-                    .insert();
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        auditLiveness(getRequest(), imageBytes, zoomedImageBytes, status);
+        return setLivenessResult(Data.object(), status);
+    }
+
+    @Post(VERIFY_LIVENESS_BATCH_ENDPOINT)
+    public void verifyLivenessBatch(@Param("batch") byte[] batchBytes) {
+        UploadLimit.checkBatch(batchBytes.length);
+        Request request = getRequest();
+        Response response = getResponse();
+        String clientId = String.valueOf(request.<Integer>get(CLIENT_ID_PARAMETER_NAME));
+
+        // Solo los tokens con el claim correspondiente pueden evitar la auditoría de las imagenes
+        boolean audit = !(Boolean.TRUE.equals(request.get(SKIP_AUDIT_ALLOWED_PARAMETER_NAME)) && Boolean.parseBoolean(request.getHeader(SKIP_AUDIT_HEADER_NAME)));
+        checkLivenessBatch(batchBytes);
+        response.addHeader(Header.CONTENT_TYPE, NDJSON_CONTENT_TYPE);
+
+        // Verificación de los pares de imagenes en paralelo, leyendo cada par del zip recién cuando hay lugar para procesarlo
+        // y escribiendo cada resultado a medida que se completa
+        CompletionService<DataObject> completionService = new ExecutorCompletionService<>(LIVENESS_BATCH_EXECUTOR);
+        OutputStream output = response.getOutputStream();
+        try (LivenessBatchReader items = new LivenessBatchReader(batchBytes)) {
+            boolean outputClosed = false;
+            int pendingItems = 0;
+            do {
+                while (!outputClosed && items.hasNext() && pendingItems < LIVENESS_BATCH_THREADS) {
+                    if (!AdmissionControl.admitBatchItem(clientId)) {
+                        throw new RuntimeException("Interrupted while waiting to verify a liveness batch item");
+                    }
+                    LivenessBatchItem item = items.next();
+                    completionService.submit(() -> {
+                        try {
+                            return verifyLivenessBatchItem(request, item, audit);
+                        } finally {
+                            AdmissionControl.releaseBatchItem(clientId);
+                        }
+                    });
+                    pendingItems++;
+                }
+                DataObject result = ExecutorUtils.getResult(ExecutorUtils.takeResult(completionService));
+                pendingItems--;
+                if (!outputClosed) {
+                    try {
+                        output.write((result + NEW_LINE).getBytes(StandardCharsets.UTF_8));
+                        output.flush();
+                    } catch (IOException ex) {
+                        // El cliente cerró la conexión, se esperan los pares en curso sin enviar nuevos
+                        outputClosed = true;
+                    }
+                }
+            } while (pendingItems > 0 || (!outputClosed && items.hasNext()));
         }
-        return response;
     }
 
-    @Post("scan_document_data")
+    @Post(SCAN_DOCUMENT_DATA_ENDPOINT)
     public DataObject scanDocument(@Param("documentFront") byte[] documentFront, @Param("documentBack") byte[] documentBack) {
+        UploadLimit.check(documentFront, documentBack);
 
         DataObject response = null;
-        String pdf417RawText = PDF417Utils.readCode(documentFront);
-        if (pdf417RawText == null) {
-            pdf417RawText = PDF417Utils.readCode(documentBack);
-        }
+        String pdf417RawText = PDF417Utils.readCode(documentFront, documentBack);
 
         if (pdf417RawText != null) {
             Map<String, Object> documentInformation = PDF417Utils.parseCode(pdf417RawText);
@@ -199,8 +265,9 @@ public class ApiController {
         return response;
     }
 
-    @Post("scan_barcode_data")
+    @Post(SCAN_BARCODE_DATA_ENDPOINT)
     public DataObject scanBarcode (@Body byte[] imageBytes) {
+        UploadLimit.check(imageBytes);
         DataObject response = null;
         String pdf417RawText = PDF417Utils.readCode(imageBytes);
         if (pdf417RawText != null) {
@@ -215,8 +282,9 @@ public class ApiController {
         return response;
     }
 
-    @Post("scan_mrz_data")
+    @Post(SCAN_MRZ_DATA_ENDPOINT)
     public DataObject scanMRZ (@Body byte[] imageBytes) {
+        UploadLimit.check(imageBytes);
         DataObject response = null;
         String mrzRawText = MRZUtils.readCode(imageBytes);
         if (mrzRawText != null) {
@@ -264,25 +332,134 @@ public class ApiController {
         return host;
     }
 
+    private DataObject verifyLivenessBatchItem(Request request, LivenessBatchItem item, boolean audit) {
+        DataObject result = Data.object().set(ID_PROPERTY_NAME, item.id);
+        if (item.imageBytes == null || item.zoomedImageBytes == null) {
+            Metrics.increment("liveness_batch_items", "result", "invalid");
+            result.set(ERROR_PROPERTY_NAME, "Missing " + (item.imageBytes == null ? PICTURE_ENTRY_NAME : ZOOMED_PICTURE_ENTRY_NAME) + " image");
+        } else {
+            try {
+                int status = verifyLivenessImages(item.imageBytes, item.zoomedImageBytes);
+                if (audit) {
+                    auditLiveness(request, item.imageBytes, item.zoomedImageBytes, status);
+                }
+                Metrics.increment("liveness_batch_items", "result", "verified");
+                setLivenessResult(result, status);
+            } catch (RuntimeException ex) {
+                Metrics.increment("liveness_batch_items", "result", "failed");
+                getLogger().warn("Liveness batch item \"" + item.id + "\" failed: " + ex.getMessage());
+                result.set(ERROR_PROPERTY_NAME, ex.getMessage() != null ? ex.getMessage() : "Unknown error");
+            }
+        }
+        return result;
+    }
+
+    private DataObject setLivenessResult(DataObject result, int status) {
+        if (status == LIVENESS_OK_STATUS_CODE) {
+            result.set(LIVENESS_PROPERTY_NAME, true);
+        } else {
+            result.set(LIVENESS_PROPERTY_NAME, false);
+            result.set(STATUS_PROPERTY_NAME, status);
+        }
+        return result;
+    }
+
+    private void auditLiveness(Request request, byte[] imageBytes, byte[] zoomedImageBytes, int status) {
+        LivenessAuditWriter.getInstance().enqueue(Data.object()
+                .set(LivenessResource.Fields.FACE_IMAGE, imageBytes)
+                .set(LivenessResource.Fields.ZOOMED_FACE_IMAGE, zoomedImageBytes)
+                .set(LivenessResource.Fields.SUCCESS, status == LIVENESS_OK_STATUS_CODE)
+                .set(LivenessResource.Fields.STATUS, status)
+                .set(LivenessResource.Fields.DATE, new Date())
+                .set(LivenessResource.Fields.VERSION, getProperty("appVersion"))
+                .set(LivenessResource.Fields.CLIENT_ID, request.get(CLIENT_ID_PARAMETER_NAME))
+                .set(LivenessResource.Fields.IP_ADDRESS, request.get(IP_PARAMETER_NAME))
+                .set(LivenessResource.Fields.HOST, request.get(HOST_PARAMETER_NAME))
+                .set(LivenessResource.Fields.DEVICE, request.getHeader(Header.USER_AGENT)));
+    }
+
+    private static void checkLivenessBatch(byte[] batchBytes) {
+        // Recorrido previo del zip descartando su contenido, para rechazar los lotes que descomprimidos superan el tamaño
+        // máximo de los lotes o la cantidad máxima de entradas antes de empezar a responder
+        long batchSize = 0;
+        int entriesCount = 0;
+        int picturesCount = 0;
+        byte[] buffer = new byte[8192];
+        try (ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(batchBytes))) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                if (LIVENESS_BATCH_MAX_ENTRIES > 0 && ++entriesCount > LIVENESS_BATCH_MAX_ENTRIES) {
+                    Metrics.increment("http_uploads_rejected");
+                    throw new ResponseException("Liveness batch exceeds the maximum of " + LIVENESS_BATCH_MAX_ENTRIES + " entries", PAYLOAD_TOO_LARGE_STATUS_CODE);
+                }
+                if (getLivenessBatchImageName(entry) != null) {
+                    picturesCount++;
+                }
+                int readBytes;
+                while ((readBytes = zipInput.read(buffer)) > 0) {
+                    batchSize += readBytes;
+                    UploadLimit.checkBatch(batchSize);
+                }
+            }
+        } catch (IOException ex) {
+            throw new ResponseException("Invalid liveness batch (" + ex.getMessage() + ")");
+        }
+        if (picturesCount == 0) {
+            throw new ResponseException("Liveness batch does not contain any picture");
+        }
+    }
+
+    private static String getLivenessBatchImageName(ZipEntry entry) {
+        // Cada par de imagenes es un directorio del zip con las entradas "picture" y "zoomedPicture"
+        String imageName = null;
+        if (!entry.isDirectory()) {
+            String entryName = entry.getName();
+            String fileName = entryName.substring(entryName.lastIndexOf(PATH_SEPARATOR) + 1);
+            int extensionIndex = fileName.indexOf(EXTENSION_SEPARATOR);
+            imageName = extensionIndex >= 0 ? fileName.substring(0, extensionIndex) : fileName;
+            if (!imageName.equals(PICTURE_ENTRY_NAME) && !imageName.equals(ZOOMED_PICTURE_ENTRY_NAME)) {
+                imageName = null;
+            }
+        }
+        return imageName;
+    }
+
     public int verifyLivenessImages(byte[] imageBytes, byte[] zoomedImageBytes) {
+        try (MatScope scope = MatScope.open()) {
+            return verifyLivenessImages(imageBytes, zoomedImageBytes, scope);
+        }
+    }
+
+    private int verifyLivenessImages(byte[] imageBytes, byte[] zoomedImageBytes, MatScope scope) {
         int status = LIVENESS_OK_STATUS_CODE;
-        Mat image = OpenCVUtils.getImage(imageBytes);
-        Mat zoomedImage = OpenCVUtils.getImage(zoomedImageBytes);
+
+        // Decodificación y detección de rostros de las 2 imagenes en paralelo
+        Future<FaceDetection> zoomedFaceDetectionFuture = LIVENESS_EXECUTOR.submit(scope.bind(() -> detectFace(zoomedImageBytes)));
+        FaceDetection faceDetection;
+        try {
+            faceDetection = detectFace(imageBytes);
+        } catch (RuntimeException ex) {
+            ExecutorUtils.awaitQuietly(zoomedFaceDetectionFuture);
+            throw ex;
+        }
+        FaceDetection zoomedFaceDetection = ExecutorUtils.getResult(zoomedFaceDetectionFuture);
+        Mat image = faceDetection.image;
+        Mat zoomedImage = zoomedFaceDetection.image;
 
         // Validación de que existen rostros en las 2 imagenes
-        Rect faceRect = OpenCVUtils.detectBiggestFeatureRect(image, faceClassfier);
-        Rect zoomedFaceRect = OpenCVUtils.detectBiggestFeatureRect(zoomedImage, faceClassfier);
+        Rect faceRect = faceDetection.faceRect;
+        Rect zoomedFaceRect = zoomedFaceDetection.faceRect;
         if (faceRect == null || zoomedFaceRect == null) {
             status = LIVENESS_FACE_NOT_FOUND_STATUS_CODE;
         }
 
         if (status == LIVENESS_OK_STATUS_CODE) {
             // Obtencioń de los rostros en las imagenes
-            Mat faceImage = image.submat(faceRect);
-            Mat zoomedFaceImage = zoomedImage.submat(zoomedFaceRect);
+            Mat faceImage = MatScope.track(image.submat(faceRect));
+            Mat zoomedFaceImage = MatScope.track(zoomedImage.submat(zoomedFaceRect));
             int imagesSize = 400;
-            Mat normalizedFaceImage = new Mat();
-            Mat normalizedZoomedFaceImage = new Mat();
+            Mat normalizedFaceImage = MatScope.track(new Mat());
+            Mat normalizedZoomedFaceImage = MatScope.track(new Mat());
             OpenCVUtils.resize(faceImage, normalizedFaceImage, imagesSize, imagesSize, imagesSize, imagesSize);
             OpenCVUtils.resize(zoomedFaceImage, normalizedZoomedFaceImage, imagesSize, imagesSize, imagesSize, imagesSize);
 
@@ -295,39 +472,153 @@ public class ApiController {
 
             // Validación de blurriness de los rostros
             if (status == LIVENESS_OK_STATUS_CODE) {
-                if (!LivenessUtils.analyseNormalizedImagesBlurriness(normalizedFaceImage, normalizedZoomedFaceImage)) {
+                if (!timeStage("blurriness", () -> LivenessUtils.analyseNormalizedImagesBlurriness(normalizedFaceImage, normalizedZoomedFaceImage))) {
                     status = LIVENESS_BLURRINESS_CHECK_FAILED_STATUS_CODE;
                 }
             }
 
             // Validación de calidad de las imagenes
             if (status == LIVENESS_OK_STATUS_CODE) {
-                if (!LivenessUtils.analyseImageQuality(image) || !LivenessUtils.analyseImageQuality(zoomedImage)) {
+                if (!analyseImages(scope, "quality", LivenessUtils::analyseImageQuality, image, zoomedImage)) {
                     status = LIVENESS_IMAGE_QUALITY_CHECK_FAILED_STATUS_CODE;
                 }
             }
 
             // Validación del grado de brillo de las imagenes
             if (status == LIVENESS_OK_STATUS_CODE) {
-                if (!LivenessUtils.analyseImageBrightness(image) || !LivenessUtils.analyseImageBrightness(zoomedImage)) {
+                if (!analyseImages(scope, "brightness", LivenessUtils::analyseImageBrightness, image, zoomedImage)) {
                     status = LIVENESS_IMAGE_BRIGHTNESS_CHECK_FAILED_STATUS_CODE;
                 }
             }
 
             // Validación de comparación de histogramas
             if (status == LIVENESS_OK_STATUS_CODE) {
-                if (!LivenessUtils.analyseImageHistograms(image, zoomedImage)) {
+                if (!timeStage("histograms", () -> LivenessUtils.analyseImageHistograms(image, zoomedImage))) {
                     status = LIVENESS_IMAGE_HISTOGRAM_CHECK_FAILED_STATUS_CODE;
                 }
             }
 
             // Validación de los patrones de Moire
             if (status == LIVENESS_OK_STATUS_CODE) {
-                if (!LivenessUtils.analyseImageMoirePatternDisturbances(faceImage) || !LivenessUtils.analyseImageMoirePatternDisturbances(zoomedFaceImage)) {
+                if (!analyseImages(scope, "moire", LivenessUtils::analyseImageMoirePatternDisturbances, faceImage, zoomedFaceImage)) {
                     status = LIVENESS_IMAGE_MOIRE_PATTERN_CHECK_FAILED_STATUS_CODE;
                 }
             }
         }
         return status;
     }
+
+    private FaceDetection detectFace(byte[] imageBytes) {
+        // Las imagenes se decodifican con su resolución original ya que el análisis de Moire la requiere
+        Mat image = timeStage("decode", () -> OpenCVUtils.getImage(imageBytes));
+        Rect faceRect = timeStage("face_detection", () -> OpenCVUtils.detectBiggestFeatureRect(image, faceClassfier.get(), faceDetectionMaxSize, FACE_DETECTION_SCALE_FACTOR, FACE_DETECTION_MIN_NEIGHBORS, FACE_DETECTION_MIN_SIZE));
+        return new FaceDetection(image, faceRect);
+    }
+
+    private boolean analyseImages(MatScope scope, String stage, Predicate<Mat> analysis, Mat image, Mat zoomedImage) {
+        Future<Boolean> zoomedImageResult = LIVENESS_EXECUTOR.submit(scope.bind(() -> timeStage(stage, () -> analysis.test(zoomedImage))));
+        boolean imageResult;
+        try {
+            imageResult = timeStage(stage, () -> analysis.test(image));
+        } catch (RuntimeException ex) {
+            ExecutorUtils.awaitQuietly(zoomedImageResult);
+            throw ex;
+        }
+        return ExecutorUtils.getResult(zoomedImageResult) && imageResult;
+    }
+
+    private static <T> T timeStage(String stage, Supplier<T> task) {
+        return Metrics.time(LIVENESS_STAGE_TIMER_NAME, task, STAGE_LABEL_NAME, stage);
+    }
+
+    private static final class LivenessBatchItem {
+
+        private final String id;
+        private byte[] imageBytes;
+        private byte[] zoomedImageBytes;
+
+        private LivenessBatchItem(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class LivenessBatchReader implements Iterator<LivenessBatchItem>, AutoCloseable {
+
+        private final ZipInputStream zipInput;
+        private final Map<String, LivenessBatchItem> incompleteItems;
+        private final Deque<LivenessBatchItem> completeItems;
+        private boolean finished;
+
+        private LivenessBatchReader(byte[] batchBytes) {
+            this.zipInput = new ZipInputStream(new ByteArrayInputStream(batchBytes));
+            this.incompleteItems = new LinkedHashMap<>();
+            this.completeItems = new ArrayDeque<>();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (completeItems.isEmpty() && !finished) {
+                readNextEntry();
+            }
+            return !completeItems.isEmpty();
+        }
+
+        @Override
+        public LivenessBatchItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return completeItems.poll();
+        }
+
+        @Override
+        public void close() {
+            try {
+                zipInput.close();
+            } catch (IOException ex) {}
+        }
+
+        private void readNextEntry() {
+            try {
+                ZipEntry entry = zipInput.getNextEntry();
+                if (entry == null) {
+                    // Los pares a los que les falta alguna imagen se informan al final
+                    finished = true;
+                    completeItems.addAll(incompleteItems.values());
+                    incompleteItems.clear();
+                } else {
+                    String imageName = getLivenessBatchImageName(entry);
+                    if (imageName != null) {
+                        String entryName = entry.getName();
+                        int separatorIndex = entryName.lastIndexOf(PATH_SEPARATOR);
+                        String id = separatorIndex >= 0 ? entryName.substring(0, separatorIndex) : "";
+                        LivenessBatchItem item = incompleteItems.computeIfAbsent(id, LivenessBatchItem::new);
+                        if (imageName.equals(PICTURE_ENTRY_NAME)) {
+                            item.imageBytes = zipInput.readAllBytes();
+                        } else {
+                            item.zoomedImageBytes = zipInput.readAllBytes();
+                        }
+                        if (item.imageBytes != null && item.zoomedImageBytes != null) {
+                            incompleteItems.remove(id);
+                            completeItems.add(item);
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                finished = true;
+                throw new ResponseException("Invalid liveness batch (" + ex.getMessage() + ")");
+            }
+        }
+    }
+
+    private static final class FaceDetection {
+
+        private final Mat image;
+        private final Rect faceRect;
+
+        private FaceDetection(Mat image, Rect faceRect) {
+            this.image = image;
+            this.faceRect = faceRect;
+        }
+    }
 }
@@ -1,8 +1,13 @@
 package com.biometrics.controllers;
 
+import com.biometrics.AdmissionControl;
+import com.biometrics.Metrics;
+import com.biometrics.UploadLimit;
+import com.biometrics.exceptions.RequestRejectedException;
 import com.biometrics.exceptions.ResponseException;
 import org.neogroup.warp.controllers.ControllerComponent;
 import org.neogroup.warp.controllers.routing.After;
+import org.neogroup.warp.controllers.routing.Before;
 import org.neogroup.warp.controllers.routing.Error;
 import org.neogroup.warp.controllers.routing.Get;
 import org.neogroup.warp.data.Data;
@@ -11,8 +16,11 @@ import org.neogroup.warp.http.Header;
 import org.neogroup.warp.http.Request;
 import org.neogroup.warp.http.Response;
 
+import java.util.Set;
+
 import static org.neogroup.warp.Warp.getLogger;
 import static org.neogroup.warp.Warp.getProperty;
+import static org.neogroup.warp.Warp.getResponse;
 
 @ControllerComponent
 public class MainController {
@@ -22,6 +30,31 @@ public class MainController {
     private static final String MESSAGE_PARAMETER_NAME = "message";
     private static final String NAME_PARAMETER_NAME = "name";
     private static final String VERSION_PARAMETER_NAME = "version";
+    private static final String REQUEST_START_TIME_PARAMETER_NAME = "requestStartTime";
+    private static final String PATH_SEPARATOR = "/";
+    private static final String PATH_VARIABLE = ":id";
+    private static final String UNMATCHED_ENDPOINT = "unmatched";
+    private static final String LIVENESS_BATCH_PATH = "/api/verify_liveness_batch";
+    private static final Set<String> KNOWN_ENDPOINTS = Set.of(PATH_SEPARATOR,
+        "/api/verify_liveness", "/api/verify_liveness_batch", "/api/scan_document_data", "/api/scan_barcode_data", "/api/scan_mrz_data",
+        "/platform/:id/liveness", "/platform/:id/liveness/:id", "/platform/:id/liveness/:id/faceImage.jpeg", "/platform/:id/liveness/:id/zoomedFaceImage.jpeg",
+        "/platform/:id/metrics", "/platform/:id/prometheus");
+    private static final String RETRY_AFTER_HEADER_NAME = "Retry-After";
+
+    @Before("*")
+    public void startRequest(Request request, Response response) {
+        request.set(REQUEST_START_TIME_PARAMETER_NAME, System.nanoTime());
+
+        // Rechazo de las subidas que superan el tamaño máximo antes de leer el cuerpo de la petición
+        String contentLength = request.getHeader(Header.CONTENT_LENGTH);
+        if (contentLength != null) {
+            if (LIVENESS_BATCH_PATH.equals(request.getPath())) {
+                UploadLimit.checkBatch(getUploadSize(contentLength));
+            } else {
+                UploadLimit.check(getUploadSize(contentLength));
+            }
+        }
+    }
 
     @Get("/")
     public DataObject getAboutInformation() {
@@ -41,10 +74,18 @@ public class MainController {
         result.set(SUCCESS_PARAMETER_NAME, false);
         result.set(MESSAGE_PARAMETER_NAME, errorMessage);
         if (exception instanceof ResponseException) {
+            int statusCode = ((ResponseException)exception).getStatusCode();
+            if (statusCode > 0) {
+                getResponse().setStatus(statusCode);
+            }
+            if (exception instanceof RequestRejectedException) {
+                getResponse().addHeader(RETRY_AFTER_HEADER_NAME, String.valueOf(((RequestRejectedException)exception).getRetryAfter()));
+            }
             getLogger().info(result.toString());
         } else {
             getLogger().warn(result.toString());
         }
+        finishRequest(request, getResponse());
         return result;
     }
 
@@ -60,6 +101,43 @@ public class MainController {
             responseObject = result;
             getLogger().info(result.toString());
         }
+        finishRequest(request, response);
         return responseObject;
     }
+
+    private void finishRequest(Request request, Response response) {
+        AdmissionControl.release(request);
+        recordRequest(request, response);
+    }
+
+    private void recordRequest(Request request, Response response) {
+        Long startTime = request.get(REQUEST_START_TIME_PARAMETER_NAME);
+        if (startTime != null) {
+            request.set(REQUEST_START_TIME_PARAMETER_NAME, null);
+            Metrics.recordTime("http_request", System.nanoTime() - startTime, "method", request.getMethod(), "endpoint", getEndpoint(request.getPath()), "status", String.valueOf(response.getStatus()));
+        }
+    }
+
+    private static long getUploadSize(String contentLength) {
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String getEndpoint(String path) {
+        StringBuilder endpoint = new StringBuilder();
+        if (path != null) {
+            for (String pathPart : path.split(PATH_SEPARATOR)) {
+                if (!pathPart.isEmpty()) {
+                    endpoint.append(PATH_SEPARATOR).append(pathPart.chars().anyMatch(Character::isDigit) ? PATH_VARIABLE : pathPart);
+                }
+            }
+        }
+        String endpointName = endpoint.length() > 0 ? endpoint.toString() : PATH_SEPARATOR;
+
+        // Las rutas desconocidas comparten una misma etiqueta para no crear una serie por cada ruta inventada
+        return KNOWN_ENDPOINTS.contains(endpointName) ? endpointName : UNMATCHED_ENDPOINT;
+    }
 }
@@ -1,5 +1,6 @@
 package com.biometrics.controllers;
 
+import com.biometrics.Metrics;
 import com.biometrics.exceptions.ResponseException;
 import com.biometrics.resources.LivenessResource;
 import org.neogroup.warp.controllers.ControllerComponent;
@@ -11,7 +12,9 @@ import org.neogroup.warp.data.query.fields.SortDirection;
 import org.neogroup.warp.http.*;
 import org.neogroup.warp.resources.Resources;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Map;
 
 import static org.neogroup.warp.Warp.getRequest;
 import static org.neogroup.warp.Warp.getResponse;
@@ -20,6 +23,7 @@ import static org.neogroup.warp.Warp.getResponse;
 public class PlatformController {
 
     private static final String ADMINISTRATOR_SESSION_ID = "8cf3e790-6cd6-483b-9297-412b30d61328";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
 
     @Before("*")
     public void checkSession(Request request, Response response) {
@@ -72,6 +76,16 @@ public class PlatformController {
         getResponse().addHeader(Header.CONTENT_TYPE, MediaType.IMAGE_JPEG).print((byte[])livenessSession.get(LivenessResource.Fields.ZOOMED_FACE_IMAGE));
     }
 
+    @Get("metrics")
+    public Map<String, Object> getMetrics() {
+        return Metrics.getSnapshot();
+    }
+
+    @Get("prometheus")
+    public void getPrometheusMetrics() {
+        getResponse().addHeader(Header.CONTENT_TYPE, PROMETHEUS_CONTENT_TYPE).print(Metrics.getPrometheusText().getBytes(StandardCharsets.UTF_8));
+    }
+
     private void processLivenessSession(Request request, DataObject livenessSession) {
         String sessionId = request.get("sessionId");
         String serverUrl = request.getServerUrl();
@@ -0,0 +1,283 @@
+package com.biometrics.data;
+
+import com.biometrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.neogroup.warp.Warp.getLogger;
+
+public class ConnectionPool {
+
+    private static final long HOUSEKEEPING_PERIOD = 30000;
+
+    private final String name;
+    private final String databaseUrl;
+    private final int minSize;
+    private final int maxSize;
+    private final long connectionTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long leakDetectionThreshold;
+    private final boolean leakTrace;
+    private final int validationTimeout;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idleConnections;
+    private final Set<PooledConnection> activeConnections;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String name, String databaseUrl, int minSize, int maxSize, long connectionTimeout, long idleTimeout, long maxLifetime, long leakDetectionThreshold, boolean leakTrace, int validationTimeout) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid connection pool sizes (min: " + minSize + ", max: " + maxSize + ")");
+        }
+        this.name = name;
+        this.databaseUrl = databaseUrl;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.connectionTimeout = connectionTimeout;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.leakDetectionThreshold = leakDetectionThreshold;
+        this.leakTrace = leakTrace;
+        this.validationTimeout = validationTimeout;
+        this.permits = new Semaphore(maxSize, true);
+        this.idleConnections = new LinkedBlockingDeque<>();
+        this.activeConnections = ConcurrentHashMap.newKeySet();
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, 0, HOUSEKEEPING_PERIOD, TimeUnit.MILLISECONDS);
+        Metrics.registerGauge(name + "_pool_max_size", () -> this.maxSize);
+        Metrics.registerGauge(name + "_pool_active", this::getActiveConnections);
+        Metrics.registerGauge(name + "_pool_idle", this::getIdleConnections);
+        Metrics.registerGauge(name + "_pool_pending", permits::getQueueLength);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool \"" + name + "\" is closed");
+        }
+        long startTime = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(connectionTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+        Metrics.recordTime(name + "_pool_wait", System.nanoTime() - startTime);
+        if (!acquired) {
+            Metrics.increment(name + "_pool_timeouts");
+            throw new SQLException("Timeout waiting for a database connection (" + connectionTimeout + "ms)");
+        }
+        try {
+            PooledConnection pooledConnection = pollValidConnection();
+            if (pooledConnection == null) {
+                pooledConnection = createConnection();
+            }
+            pooledConnection.borrowTime = System.currentTimeMillis();
+            // La traza de quien toma la conexión es costosa, solo se captura si se habilitó explícitamente
+            pooledConnection.borrowTrace = leakDetectionThreshold > 0 && leakTrace ? new Exception("Connection borrowed here") : null;
+            pooledConnection.leakReported = false;
+            activeConnections.add(pooledConnection);
+            return pooledConnection.createProxy();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            pooledConnection.closePhysically();
+        }
+    }
+
+    private PooledConnection pollValidConnection() {
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            if (!pooledConnection.isExpired() && pooledConnection.isValid()) {
+                return pooledConnection;
+            }
+            pooledConnection.closePhysically();
+        }
+        return null;
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(databaseUrl);
+        Metrics.increment(name + "_pool_created");
+        return new PooledConnection(connection);
+    }
+
+    private void releaseConnection(PooledConnection pooledConnection) {
+        activeConnections.remove(pooledConnection);
+        try {
+            boolean reusable = !closed && !pooledConnection.isExpired() && !pooledConnection.connection.isClosed();
+            if (reusable && !pooledConnection.connection.getAutoCommit()) {
+                pooledConnection.connection.rollback();
+                pooledConnection.connection.setAutoCommit(true);
+            }
+            if (reusable) {
+                pooledConnection.lastUsedTime = System.currentTimeMillis();
+                idleConnections.offerFirst(pooledConnection);
+            } else {
+                pooledConnection.closePhysically();
+            }
+        } catch (SQLException ex) {
+            pooledConnection.closePhysically();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Eliminar conexiones ociosas que superaron su tiempo de vida o de inactividad
+            for (PooledConnection pooledConnection : idleConnections) {
+                boolean idleExpired = idleTimeout > 0 && (now - pooledConnection.lastUsedTime) > idleTimeout && (getIdleConnections() + getActiveConnections()) > minSize;
+                if ((idleExpired || pooledConnection.isExpired()) && idleConnections.remove(pooledConnection)) {
+                    pooledConnection.closePhysically();
+                }
+            }
+
+            // Reportar conexiones que no fueron devueltas al pool
+            if (leakDetectionThreshold > 0) {
+                for (PooledConnection pooledConnection : activeConnections) {
+                    if (!pooledConnection.leakReported && (now - pooledConnection.borrowTime) > leakDetectionThreshold) {
+                        pooledConnection.leakReported = true;
+                        Metrics.increment(name + "_pool_leaks");
+                        getLogger().warn("Possible connection leak detected in pool \"" + name + "\", connection borrowed " + (now - pooledConnection.borrowTime) + "ms ago" + getTraceDescription(pooledConnection.borrowTrace));
+                    }
+                }
+            }
+
+            // Completar el mínimo de conexiones ociosas
+            while (!closed && (getIdleConnections() + getActiveConnections()) < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection pooledConnection = createConnection();
+                    pooledConnection.lastUsedTime = now;
+                    idleConnections.offerLast(pooledConnection);
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (Exception ex) {
+            getLogger().warn("Connection pool \"" + name + "\" housekeeping failed: " + ex.getMessage());
+        }
+    }
+
+    private static String getTraceDescription(Exception trace) {
+        StringBuilder description = new StringBuilder();
+        if (trace != null) {
+            description.append(" at");
+            for (StackTraceElement element : trace.getStackTrace()) {
+                if (!element.getClassName().startsWith(ConnectionPool.class.getName())) {
+                    description.append(System.lineSeparator()).append("\tat ").append(element);
+                }
+            }
+        }
+        return description.toString();
+    }
+
+    private final class PooledConnection {
+
+        private final Connection connection;
+        private final long creationTime;
+        private volatile long lastUsedTime;
+        private volatile long borrowTime;
+        private volatile Exception borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.creationTime = System.currentTimeMillis();
+            this.lastUsedTime = creationTime;
+        }
+
+        private Connection createProxy() {
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandler(this));
+        }
+
+        private boolean isExpired() {
+            return maxLifetime > 0 && (System.currentTimeMillis() - creationTime) > maxLifetime;
+        }
+
+        private boolean isValid() {
+            try {
+                return connection.isValid(validationTimeout);
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        private void closePhysically() {
+            try {
+                connection.close();
+            } catch (SQLException ex) {}
+            Metrics.increment(name + "_pool_closed");
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final PooledConnection pooledConnection;
+        private final AtomicBoolean closed;
+
+        private ConnectionHandler(PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+            this.closed = new AtomicBoolean(false);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        releaseConnection(pooledConnection);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || pooledConnection.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooledConnection.connection;
+            }
+            if (closed.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(pooledConnection.connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.biometrics.data;
+
+import com.biometrics.Configuration;
+import com.biometrics.Metrics;
+import com.biometrics.resources.LivenessResource;
+import org.neogroup.warp.data.DataObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.neogroup.warp.Warp.getLogger;
+
+public class LivenessAuditWriter {
+
+    private static final String QUEUE_CAPACITY_PROPERTY_NAME = "liveness_audit_queue_capacity";
+    private static final String QUEUE_MAX_BYTES_PROPERTY_NAME = "liveness_audit_queue_max_bytes";
+    private static final String BATCH_SIZE_PROPERTY_NAME = "liveness_audit_batch_size";
+    private static final String FLUSH_INTERVAL_PROPERTY_NAME = "liveness_audit_flush_interval";
+    private static final String ENQUEUE_TIMEOUT_PROPERTY_NAME = "liveness_audit_enqueue_timeout";
+    private static final String SHUTDOWN_TIMEOUT_PROPERTY_NAME = "liveness_audit_shutdown_timeout";
+
+    private static final long DROP_WARNING_INTERVAL = 60000;
+
+    private static final String[] COLUMNS = {
+        LivenessResource.Fields.DATE,
+        LivenessResource.Fields.VERSION,
+        LivenessResource.Fields.CLIENT_ID,
+        LivenessResource.Fields.IP_ADDRESS,
+        LivenessResource.Fields.FACE_IMAGE,
+        LivenessResource.Fields.ZOOMED_FACE_IMAGE,
+        LivenessResource.Fields.SUCCESS,
+        LivenessResource.Fields.STATUS,
+        LivenessResource.Fields.HOST,
+        LivenessResource.Fields.DEVICE
+    };
+
+    private static LivenessAuditWriter instance;
+
+    private final BlockingQueue<DataObject> queue;
+    private final Semaphore queueBytes;
+    private final int queueMaxBytes;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long enqueueTimeout;
+    private final long shutdownTimeout;
+    private final Thread writerThread;
+    private final AtomicLong droppedSinceWarning = new AtomicLong();
+    private final AtomicLong lastDropWarningTime = new AtomicLong();
+    private volatile boolean running;
+
+    public static synchronized LivenessAuditWriter getInstance() {
+        if (instance == null) {
+            instance = new LivenessAuditWriter(
+                Configuration.getInt(QUEUE_CAPACITY_PROPERTY_NAME, 100),
+                Configuration.getLong(QUEUE_MAX_BYTES_PROPERTY_NAME, 268435456),
+                Configuration.getInt(BATCH_SIZE_PROPERTY_NAME, 20),
+                Configuration.getLong(FLUSH_INTERVAL_PROPERTY_NAME, 1000),
+                Configuration.getLong(ENQUEUE_TIMEOUT_PROPERTY_NAME, 1000),
+                Configuration.getLong(SHUTDOWN_TIMEOUT_PROPERTY_NAME, 10000));
+        }
+        return instance;
+    }
+
+    private LivenessAuditWriter(int queueCapacity, long queueMaxBytes, int batchSize, long flushInterval, long enqueueTimeout, long shutdownTimeout) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueMaxBytes = (int)Math.min(Integer.MAX_VALUE, Math.max(1, queueMaxBytes));
+        this.queueBytes = new Semaphore(this.queueMaxBytes);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.enqueueTimeout = enqueueTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.running = true;
+        this.writerThread = new Thread(this::run, "liveness-audit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "liveness-audit-writer-shutdown"));
+        Metrics.registerGauge("liveness_audit_queue_size", queue::size);
+        Metrics.registerGauge("liveness_audit_queue_bytes", () -> this.queueMaxBytes - queueBytes.availablePermits());
+    }
+
+    public boolean enqueue(DataObject liveness) {
+        boolean enqueued = false;
+        if (running) {
+            // Cada registro retiene sus imágenes hasta escribirse, por lo que la cola se limita también por su tamaño en bytes
+            int recordSize = getRecordSize(liveness);
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(enqueueTimeout);
+                if (enqueueTimeout > 0 ? queueBytes.tryAcquire(recordSize, enqueueTimeout, TimeUnit.MILLISECONDS) : queueBytes.tryAcquire(recordSize)) {
+                    long remainingTime = deadline - System.nanoTime();
+                    enqueued = remainingTime > 0 ? queue.offer(liveness, remainingTime, TimeUnit.NANOSECONDS) : queue.offer(liveness);
+                    if (!enqueued) {
+                        queueBytes.release(recordSize);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (enqueued) {
+            Metrics.increment("liveness_audit_enqueued");
+        } else {
+            Metrics.increment("liveness_audit_dropped");
+            warnDropped();
+        }
+        return enqueued;
+    }
+
+    private void warnDropped() {
+        // Una sola advertencia por intervalo con la cantidad de registros descartados, para no saturar el log cuando la base se atrasa
+        long droppedCount = droppedSinceWarning.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long lastWarningTime = lastDropWarningTime.get();
+        if (now - lastWarningTime >= DROP_WARNING_INTERVAL && lastDropWarningTime.compareAndSet(lastWarningTime, now)) {
+            droppedCount = droppedSinceWarning.getAndSet(0);
+            getLogger().warn("Liveness audit queue is full, " + droppedCount + " liveness records were dropped since the last warning");
+        }
+    }
+
+    public void close() {
+        if (running) {
+            running = false;
+            try {
+                writerThread.join(shutdownTimeout);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (!queue.isEmpty()) {
+                getLogger().warn("Liveness audit writer stopped with " + queue.size() + " pending records");
+            }
+        }
+    }
+
+    private void run() {
+        List<DataObject> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                DataObject liveness = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (liveness != null) {
+                    batch.add(liveness);
+                    long flushTime = System.currentTimeMillis() + flushInterval;
+                    while (batch.size() < batchSize && running) {
+                        long remainingTime = flushTime - System.currentTimeMillis();
+                        if (remainingTime <= 0) {
+                            break;
+                        }
+                        liveness = queue.poll(remainingTime, TimeUnit.MILLISECONDS);
+                        if (liveness == null) {
+                            break;
+                        }
+                        batch.add(liveness);
+                    }
+                    queue.drainTo(batch, batchSize - batch.size());
+                    try {
+                        flush(batch);
+                    } finally {
+                        for (DataObject writtenLiveness : batch) {
+                            queueBytes.release(getRecordSize(writtenLiveness));
+                        }
+                        batch.clear();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            }
+        }
+    }
+
+    private void flush(List<DataObject> batch) {
+        long startTime = System.nanoTime();
+        try (Connection connection = MainDataSource.getConnectionPool().getConnection();
+             PreparedStatement statement = connection.prepareStatement(getInsertStatement(batch.size()))) {
+            int parameterIndex = 1;
+            for (DataObject liveness : batch) {
+                for (String column : COLUMNS) {
+                    Object value = liveness.get(column);
+                    if (value instanceof Date) {
+                        value = new Timestamp(((Date)value).getTime());
+                    }
+                    statement.setObject(parameterIndex++, value);
+                }
+            }
+            statement.executeUpdate();
+            Metrics.increment("liveness_audit_flushed", batch.size());
+        } catch (SQLException | RuntimeException ex) {
+            // Un error inesperado tampoco debe detener el hilo de escritura, solo se pierde el lote
+            Metrics.increment("liveness_audit_failed", batch.size());
+            getLogger().warn("Liveness audit batch of " + batch.size() + " records could not be written: " + ex.getMessage());
+        } finally {
+            Metrics.recordTime("liveness_audit_insert", System.nanoTime() - startTime);
+        }
+    }
+
+    private int getRecordSize(DataObject liveness) {
+        long recordSize = 0;
+        for (String column : COLUMNS) {
+            Object value = liveness.get(column);
+            if (value instanceof byte[]) {
+                recordSize += ((byte[])value).length;
+            }
+        }
+        return (int)Math.min(queueMaxBytes, recordSize);
+    }
+
+    private static String getInsertStatement(int rowsCount) {
+        StringBuilder rowPlaceholders = new StringBuilder("(");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            rowPlaceholders.append(i > 0 ? ",?" : "?");
+        }
+        rowPlaceholders.append(')');
+        StringBuilder statement = new StringBuilder("INSERT INTO ").append(LivenessResource.NAME).append(" (").append(String.join(",", COLUMNS)).append(") VALUES ");
+        for (int i = 0; i < rowsCount; i++) {
+            if (i > 0) {
+                statement.append(',');
+            }
+            statement.append(rowPlaceholders);
+        }
+        return statement.toString();
+    }
+}
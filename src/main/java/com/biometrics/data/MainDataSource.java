@@ -1,39 +1,63 @@
 package com.biometrics.data;
 
+import com.biometrics.Configuration;
 import org.neogroup.warp.data.DataSource;
 import org.neogroup.warp.data.DataSourceComponent;
 
 import java.net.URI;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 @DataSourceComponent("main")
 public class MainDataSource extends DataSource {
 
-    private final String databaseUrl;
+    private static final String POOL_MIN_SIZE_PROPERTY_NAME = "database_pool_min_size";
+    private static final String POOL_MAX_SIZE_PROPERTY_NAME = "database_pool_max_size";
+    private static final String POOL_CONNECTION_TIMEOUT_PROPERTY_NAME = "database_pool_connection_timeout";
+    private static final String POOL_IDLE_TIMEOUT_PROPERTY_NAME = "database_pool_idle_timeout";
+    private static final String POOL_MAX_LIFETIME_PROPERTY_NAME = "database_pool_max_lifetime";
+    private static final String POOL_LEAK_DETECTION_THRESHOLD_PROPERTY_NAME = "database_pool_leak_detection_threshold";
+    private static final String POOL_LEAK_TRACE_PROPERTY_NAME = "database_pool_leak_trace";
+    private static final String POOL_VALIDATION_TIMEOUT_PROPERTY_NAME = "database_pool_validation_timeout";
 
-    public MainDataSource() {
+    private static ConnectionPool connectionPool;
+
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool("database", getDatabaseUrl(),
+                    Configuration.getInt(POOL_MIN_SIZE_PROPERTY_NAME, 1),
+                    Configuration.getInt(POOL_MAX_SIZE_PROPERTY_NAME, 10),
+                    Configuration.getLong(POOL_CONNECTION_TIMEOUT_PROPERTY_NAME, 30000),
+                    Configuration.getLong(POOL_IDLE_TIMEOUT_PROPERTY_NAME, 600000),
+                    Configuration.getLong(POOL_MAX_LIFETIME_PROPERTY_NAME, 1800000),
+                    Configuration.getLong(POOL_LEAK_DETECTION_THRESHOLD_PROPERTY_NAME, 60000),
+                    Configuration.getBoolean(POOL_LEAK_TRACE_PROPERTY_NAME, false),
+                    Configuration.getInt(POOL_VALIDATION_TIMEOUT_PROPERTY_NAME, 5));
+        }
+        return connectionPool;
+    }
+
+    private static String getDatabaseUrl() {
         String jdbDatabaseUrl = System.getenv("JDBC_DATABASE_URL");
         String databaseUrl = System.getenv("DATABASE_URL");
         if (jdbDatabaseUrl != null) {
-            this.databaseUrl = jdbDatabaseUrl;
+            return jdbDatabaseUrl;
         } else if (databaseUrl != null) {
             try {
                 URI dbUri = new URI(databaseUrl);
                 String username = dbUri.getUserInfo().split(":")[0];
                 String password = dbUri.getUserInfo().split(":")[1];
-                this.databaseUrl = "jdbc:postgresql://" + dbUri.getHost() + ':' + dbUri.getPort() + dbUri.getPath() + "?sslmode=require&user=" + username + "&password=" + password;
+                return "jdbc:postgresql://" + dbUri.getHost() + ':' + dbUri.getPort() + dbUri.getPath() + "?sslmode=require&user=" + username + "&password=" + password;
             } catch (Exception ex) {
                 throw new RuntimeException("Error in database initialization");
             }
         } else {
-            this.databaseUrl = "jdbc:postgresql://localhost:5432/biometrics?user=postgres&password=postgres";
+            return "jdbc:postgresql://localhost:5432/biometrics?user=postgres&password=postgres";
         }
     }
 
     @Override
     protected Connection requestConnection() throws SQLException {
-        return DriverManager.getConnection(databaseUrl);
+        return getConnectionPool().getConnection();
     }
 }
@@ -0,0 +1,17 @@
+package com.biometrics.exceptions;
+
+public class RequestRejectedException extends ResponseException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfter;
+
+    public RequestRejectedException(String message, int statusCode, long retryAfter) {
+        super(message, statusCode);
+        this.retryAfter = retryAfter;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -2,7 +2,18 @@ package com.biometrics.exceptions;
 
 public class ResponseException extends RuntimeException {
 
+    private final int statusCode;
+
     public ResponseException(String message) {
+        this(message, 0);
+    }
+
+    public ResponseException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
     }
 }
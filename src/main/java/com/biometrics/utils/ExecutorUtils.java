@@ -0,0 +1,59 @@
+package com.biometrics.utils;
+
+import com.biometrics.Metrics;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ExecutorUtils {
+
+    public static ThreadPoolExecutor createBoundedExecutor(String name, int threads, int queueCapacity) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Metrics.registerGauge(name + "_executor_threads", executor::getMaximumPoolSize);
+        Metrics.registerGauge(name + "_executor_active", executor::getActiveCount);
+        Metrics.registerGauge(name + "_executor_queued", () -> executor.getQueue().size());
+        return executor;
+    }
+
+    public static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new RuntimeException("Interrupted while waiting for a task result", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public static <T> Future<T> takeResult(CompletionService<T> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a task result", ex);
+        }
+    }
+
+    public static void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException ex) {}
+    }
+}
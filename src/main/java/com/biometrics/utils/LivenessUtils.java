@@ -8,6 +8,8 @@ import java.util.*;
 import static org.opencv.core.CvType.CV_8U;
 import static org.opencv.imgproc.Imgproc.GC_INIT_WITH_RECT;
 
+// Los scopes de cada análisis liberan las matrices intermedias registradas con MatScope.track sin referenciarse en el try
+@SuppressWarnings("try")
 public class LivenessUtils {
 
     private static int[] NORMALIZED_BINARY_PATTERN_OFFSETS;
@@ -38,28 +40,30 @@ public class LivenessUtils {
     }
 
     public static boolean analyseImageQuality(Mat image) {
-        Mat hsvImage = new Mat();
-        Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
-        double[] saturationValues = OpenCVUtils.getHistogram(hsvImage, 1, 256);
-        double[] valueValues = OpenCVUtils.getHistogram(hsvImage, 2, 256);
-        int activeValuesCounter = 0;
-        for (int i = 0; i < 256; i++) {
-            if (valueValues[i] > 0) {
-                activeValuesCounter++;
+        try (MatScope scope = MatScope.open()) {
+            Mat hsvImage = MatScope.track(new Mat());
+            Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
+            double[] saturationValues = OpenCVUtils.getHistogram(hsvImage, 1, 256);
+            double[] valueValues = OpenCVUtils.getHistogram(hsvImage, 2, 256);
+            int activeValuesCounter = 0;
+            for (int i = 0; i < 256; i++) {
+                if (valueValues[i] > 0) {
+                    activeValuesCounter++;
+                }
             }
-        }
-        double valueQuality = activeValuesCounter / 256.0;
-        double maxSaturationValue = Arrays.stream(saturationValues).max().getAsDouble();
-        double maxSaturationThreshold = maxSaturationValue * 0.4;
-        int normalSaturationCounter = 0;
-        for (int i = 0; i < 256; i++) {
-            if (saturationValues[i] < maxSaturationThreshold) {
-                normalSaturationCounter++;
+            double valueQuality = activeValuesCounter / 256.0;
+            double maxSaturationValue = Arrays.stream(saturationValues).max().getAsDouble();
+            double maxSaturationThreshold = maxSaturationValue * 0.4;
+            int normalSaturationCounter = 0;
+            for (int i = 0; i < 256; i++) {
+                if (saturationValues[i] < maxSaturationThreshold) {
+                    normalSaturationCounter++;
+                }
             }
+            double saturationQuality = normalSaturationCounter / 256.0;
+            double quality = valueQuality * saturationQuality;
+            return quality >= 0.9;
         }
-        double saturationQuality = normalSaturationCounter / 256.0;
-        double quality = valueQuality * saturationQuality;
-        return quality >= 0.9;
     }
 
     public static boolean analyseImageBrightness(Mat image) {
@@ -68,86 +72,39 @@ public class LivenessUtils {
     }
 
     public static boolean analyseImageHistograms(Mat image, Mat zoomedImage) {
-        int[] histSize = {50, 60};
-        float[] ranges = {0, 180, 0, 256};
-        int[] channels = {0, 1};
-        Mat imageHist = new Mat();
-        Imgproc.calcHist(Arrays.asList(image), new MatOfInt(channels), new Mat(), imageHist, new MatOfInt(histSize), new MatOfFloat(ranges), false);
-        Mat zoomedImageHist = new Mat();
-        Imgproc.calcHist(Arrays.asList(zoomedImage), new MatOfInt(channels), new Mat(), zoomedImageHist, new MatOfInt(histSize), new MatOfFloat(ranges), false);
-        double histSimilarity = Imgproc.compareHist(imageHist, zoomedImageHist, Imgproc.HISTCMP_CORREL);
-        return histSimilarity >= 0.4;
+        try (MatScope scope = MatScope.open()) {
+            int[] histSize = {50, 60};
+            float[] ranges = {0, 180, 0, 256};
+            int[] channels = {0, 1};
+            MatOfInt channelsMat = MatScope.track(new MatOfInt(channels));
+            MatOfInt histSizeMat = MatScope.track(new MatOfInt(histSize));
+            MatOfFloat rangesMat = MatScope.track(new MatOfFloat(ranges));
+            Mat mask = MatScope.track(new Mat());
+            Mat imageHist = MatScope.track(new Mat());
+            Imgproc.calcHist(Arrays.asList(image), channelsMat, mask, imageHist, histSizeMat, rangesMat, false);
+            Mat zoomedImageHist = MatScope.track(new Mat());
+            Imgproc.calcHist(Arrays.asList(zoomedImage), channelsMat, mask, zoomedImageHist, histSizeMat, rangesMat, false);
+            double histSimilarity = Imgproc.compareHist(imageHist, zoomedImageHist, Imgproc.HISTCMP_CORREL);
+            return histSimilarity >= 0.4;
+        }
     }
 
     public static boolean analyseImageMoirePatternDisturbances(Mat image) {
-        // Convertir la imagen a escala de grises
-        Mat grayImage = new Mat();
-        OpenCVUtils.grayScale(image, grayImage);
+        try (MatScope scope = MatScope.open()) {
+            // Convertir la imagen a escala de grises
+            Mat grayImage = MatScope.track(new Mat());
+            OpenCVUtils.grayScale(image, grayImage);
 
-        // Aplico una ventana de hanning para evitar problemas en los bordes de la imagen
-        OpenCVUtils.hanningWindow(grayImage, grayImage);
+            // Aplico una ventana de hanning para evitar problemas en los bordes de la imagen
+            OpenCVUtils.hanningWindow(grayImage, grayImage);
 
-        // Generación de espectros de magnitud
-        Mat magnitudeSpectrum = OpenCVUtils.getMagnitudeSpectrum(grayImage);
-
-        // Obtener todos los valores que hay en cada franja de distancia
-        int rows = magnitudeSpectrum.rows();
-        int cols = magnitudeSpectrum.cols();
-        int midCols = (int)(cols / 2.0);
-        int midRows = (int)(rows / 2.0);
-        Map<Integer, List<Double>> pixelValuesByDistance = new HashMap<>();
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < midCols; col++) {
-                int pixelDistance = (int) Math.sqrt(Math.pow(midCols - col, 2) + Math.pow(midRows - row, 2));
-                double pixelValue = magnitudeSpectrum.get(row, col)[0];
-                List<Double> pixelValuesAtDistance = pixelValuesByDistance.computeIfAbsent(pixelDistance, k -> new ArrayList<>());
-                pixelValuesAtDistance.add(pixelValue);
-            }
-        }
+            // Generación de espectros de magnitud
+            Mat magnitudeSpectrum = OpenCVUtils.getMagnitudeSpectrum(grayImage);
 
-        // Obtener la media y la desviación estandar de cada franja de distancia
-        Map<Integer, Double> pixelsAverageByDistance = new HashMap<>();
-        Map<Integer, Double> pixelsStandardDeviationByDistance = new HashMap<>();
-        for (int distance : pixelValuesByDistance.keySet()) {
-            List<Double> distanceValues = pixelValuesByDistance.get(distance);
-            Collections.sort(distanceValues);
-            double distanceValuesSum = distanceValues.stream().mapToDouble(Double::doubleValue).sum();
-            int distanceValuesCount = distanceValues.size();
-            double distanceValuesAverage = distanceValuesSum / distanceValuesCount;
-            double distanceValuesDeviationSum = 0;
-            for (double distanceValue : distanceValues) {
-                distanceValuesDeviationSum += Math.pow(distanceValue - distanceValuesAverage, 2);
-            }
-            double distanceValuesStandardDeviation = Math.sqrt(distanceValuesDeviationSum / (double)distanceValuesCount);
-            pixelsAverageByDistance.put(distance, distanceValuesAverage);
-            pixelsStandardDeviationByDistance.put(distance, distanceValuesStandardDeviation);
+            // Calcular el porcentaje de pixels de alta frecuencia en el espectro
+            double disturbancesPercentage = getHighFrequencyPercentage(magnitudeSpectrum);
+            return disturbancesPercentage < 0.3;
         }
-
-        // Pintado de pixels del spectro de alta frecuencia
-        Mat highFrequencySpectrum = Mat.zeros(magnitudeSpectrum.size(), CV_8U);
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < midCols; col++) {
-                int pixelDistance = (int) Math.sqrt(Math.pow(midCols - col, 2) + Math.pow(midRows - row, 2));
-                double pixelValue = magnitudeSpectrum.get(row, col)[0];
-                double distanceAverage = pixelsAverageByDistance.get(pixelDistance);
-                double distanceStandardDeviation = pixelsStandardDeviationByDistance.get(pixelDistance);
-                double testPixelValue = distanceAverage;
-                testPixelValue += distanceStandardDeviation * 1.0;
-                if (pixelValue > testPixelValue) {
-                    highFrequencySpectrum.put(row, col, 255);
-                    highFrequencySpectrum.put(rows - row - 1, cols - col - 1, 255);
-                }
-            }
-        }
-
-        // Erosionar el espectro de alta frecuencia para eliminar pixels aislados (ruido)
-        Imgproc.erode(highFrequencySpectrum, highFrequencySpectrum, new Mat(), new Point(-1, -1), 1);
-
-        // Calcular el porcentaje de pixels encendidos en el espectro de alta frecuencia
-        int totalPixels = cols * rows;
-        int activatedPixels = Core.countNonZero(highFrequencySpectrum);
-        double disturbancesPercentage = activatedPixels * 100.0 / totalPixels;
-        return disturbancesPercentage < 0.3;
     }
 
     private static double analyseImageMoirePatternDisturbancesOnBandWidths(Mat image) {
@@ -155,96 +112,124 @@ public class LivenessUtils {
     }
 
     private static double analyseImageMoirePatternDisturbancesOnBandWidths(Mat image, double k, int kernelSize, double sigmaLow, double sigmaHigh, double sigmaDelta) {
-        // Convertir la imagen a escala de grises
-        Mat grayImage = new Mat();
-        OpenCVUtils.grayScale(image, grayImage);
-
-        // Iterar en diferentes bandas de frequencia para encontrar picos
-        Mat dog1 = new Mat();
-        Mat dog2 = new Mat();
-        Mat dog = new Mat();
-        Mat magnitudeSpectrum = new Mat();
-        Size kernel = new Size(kernelSize,kernelSize);
-        double disturbancesPercentage = 0;
-        for (double sigma = sigmaLow; sigma <= sigmaHigh; sigma += sigmaDelta) {
-            // Obtener una banda de frecuencia haciendo un diferencial de Gauss
-            Imgproc.GaussianBlur(grayImage, dog1, kernel, sigma, sigma);
-            Imgproc.GaussianBlur(grayImage, dog2, kernel, k * sigma, k * sigma);
-            Core.subtract(dog2, dog1, dog);
-
-            // Aplicar una ventana de hanning para evitar problemas en los bordes de la imagen
-            OpenCVUtils.hanningWindow(dog, dog);
-
-            // Obtener el espectro de magnitud de la banda de frecuencia
-            magnitudeSpectrum = OpenCVUtils.getMagnitudeSpectrum(dog);
-
-            // Obtener todos los valores que hay en cada franja de distancia
-            int rows = magnitudeSpectrum.rows();
-            int cols = magnitudeSpectrum.cols();
-            int midCols = (int)(cols / 2.0);
-            int midRows = (int)(rows / 2.0);
-            Map<Integer, List<Double>> pixelValuesByDistance = new HashMap<>();
-            for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < midCols; col++) {
-                    int pixelDistance = (int)Math.sqrt(Math.pow(midCols - col, 2) + Math.pow(midRows - row, 2));
-                    double pixelValue = magnitudeSpectrum.get(row, col)[0];
-                    List<Double> pixelValuesAtDistance = pixelValuesByDistance.computeIfAbsent(pixelDistance, list -> new ArrayList<>());
-                    pixelValuesAtDistance.add(pixelValue);
+        try (MatScope scope = MatScope.open()) {
+            // Convertir la imagen a escala de grises
+            Mat grayImage = MatScope.track(new Mat());
+            OpenCVUtils.grayScale(image, grayImage);
+
+            // Iterar en diferentes bandas de frequencia para encontrar picos
+            Mat dog1 = MatScope.track(new Mat());
+            Mat dog2 = MatScope.track(new Mat());
+            Mat dog = MatScope.track(new Mat());
+            Size kernel = new Size(kernelSize,kernelSize);
+            double disturbancesPercentage = 0;
+            for (double sigma = sigmaLow; sigma <= sigmaHigh; sigma += sigmaDelta) {
+                // Obtener una banda de frecuencia haciendo un diferencial de Gauss
+                Imgproc.GaussianBlur(grayImage, dog1, kernel, sigma, sigma);
+                Imgproc.GaussianBlur(grayImage, dog2, kernel, k * sigma, k * sigma);
+                Core.subtract(dog2, dog1, dog);
+
+                // Aplicar una ventana de hanning para evitar problemas en los bordes de la imagen
+                OpenCVUtils.hanningWindow(dog, dog);
+
+                // Obtener el espectro de magnitud de la banda de frecuencia
+                Mat magnitudeSpectrum = OpenCVUtils.getMagnitudeSpectrum(dog);
+
+                // Calcular el porcentaje de pixels de alta frecuencia en el espectro
+                double highFrequencyPercentage = getHighFrequencyPercentage(magnitudeSpectrum);
+                if (highFrequencyPercentage > disturbancesPercentage) {
+                    disturbancesPercentage = highFrequencyPercentage;
                 }
             }
 
-            // Obtener la media y la desviación estandar de cada franja de distancia
-            Map<Integer, Double> pixelsAverageByDistance = new HashMap<>();
-            Map<Integer, Double> pixelsStandardDeviationByDistance = new HashMap<>();
-            for (int distance : pixelValuesByDistance.keySet()) {
-                List<Double> distanceValues = pixelValuesByDistance.get(distance);
-                Collections.sort(distanceValues);
-                double distanceValuesSum = distanceValues.stream().mapToDouble(Double::doubleValue).sum();
-                int distanceValuesCount = distanceValues.size();
-                double distanceValuesAverage = distanceValuesSum / distanceValuesCount;
+            return disturbancesPercentage;
+        }
+    }
+
+    private static double getHighFrequencyPercentage(Mat magnitudeSpectrum) {
+        int rows = magnitudeSpectrum.rows();
+        int cols = magnitudeSpectrum.cols();
+        int midCols = (int)(cols / 2.0);
+        int totalPixels = cols * rows;
+        RadialDistances radialDistances = new RadialDistances(rows, cols);
+        int[] pixelDistances = radialDistances.distances;
+        int distancesCount = radialDistances.distancesCount;
+        byte[] spectrumData = new byte[totalPixels];
+        byte[] highFrequencyData = new byte[totalPixels];
+        int[] distanceHistograms = new int[distancesCount << 8];
+        int[] distanceCounts = new int[distancesCount];
+        long[] distanceSums = new long[distancesCount];
+        double[] distanceThresholds = new double[distancesCount];
+
+        // Copiar el espectro de magnitud en un único acceso nativo
+        try (MatScope scope = MatScope.open()) {
+            Mat spectrum = magnitudeSpectrum.isContinuous() ? magnitudeSpectrum : MatScope.track(magnitudeSpectrum.clone());
+            spectrum.get(0, 0, spectrumData);
+        }
+
+        // Acumular el histograma de valores de cada franja de distancia en una sola pasada
+        for (int row = 0, distanceIndex = 0; row < rows; row++) {
+            int rowOffset = row * cols;
+            for (int col = 0; col < midCols; col++, distanceIndex++) {
+                int pixelDistance = pixelDistances[distanceIndex];
+                int pixelValue = spectrumData[rowOffset + col] & 0xFF;
+                distanceHistograms[(pixelDistance << 8) + pixelValue]++;
+                distanceCounts[pixelDistance]++;
+                distanceSums[pixelDistance] += pixelValue;
+            }
+        }
+
+        // Obtener la media y la desviación estandar de cada franja de distancia. La suma de desviaciones se
+        // realiza en orden ascendente de valores para obtener exactamente el mismo resultado que ordenando los pixels
+        for (int distance = 0; distance < distancesCount; distance++) {
+            int distanceValuesCount = distanceCounts[distance];
+            if (distanceValuesCount > 0) {
+                double distanceValuesAverage = distanceSums[distance] / (double)distanceValuesCount;
                 double distanceValuesDeviationSum = 0;
-                for (double distanceValue : distanceValues) {
-                    distanceValuesDeviationSum += Math.pow(distanceValue - distanceValuesAverage, 2);
+                int histogramOffset = distance << 8;
+                for (int value = 0; value < 256; value++) {
+                    int valueCount = distanceHistograms[histogramOffset + value];
+                    if (valueCount > 0) {
+                        double valueDeviation = Math.pow(value - distanceValuesAverage, 2);
+                        for (int i = 0; i < valueCount; i++) {
+                            distanceValuesDeviationSum += valueDeviation;
+                        }
+                    }
                 }
                 double distanceValuesStandardDeviation = Math.sqrt(distanceValuesDeviationSum / (double)distanceValuesCount);
-                pixelsAverageByDistance.put(distance, distanceValuesAverage);
-                pixelsStandardDeviationByDistance.put(distance, distanceValuesStandardDeviation);
+                distanceThresholds[distance] = distanceValuesAverage + distanceValuesStandardDeviation;
             }
+        }
 
-            // Pintado de pixels del spectro de alta frecuencia
-            Mat highFrequencySpectrum = Mat.zeros(magnitudeSpectrum.size(), CV_8U);
-            for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < midCols; col++) {
-                    int pixelDistance = (int) Math.sqrt(Math.pow(midCols - col, 2) + Math.pow(midRows - row, 2));
-                    double pixelValue = magnitudeSpectrum.get(row, col)[0];
-                    double distanceAverage = pixelsAverageByDistance.get(pixelDistance);
-                    double distanceStandardDeviation = pixelsStandardDeviationByDistance.get(pixelDistance);
-                    double testPixelValue = distanceAverage;
-                    testPixelValue += distanceStandardDeviation * 1.0;
-                    if (pixelValue > testPixelValue) {
-                        highFrequencySpectrum.put(row, col, 255);
-                        highFrequencySpectrum.put(rows - row - 1, cols - col - 1, 255);
-                    }
+        // Pintado de pixels del spectro de alta frecuencia
+        for (int row = 0, distanceIndex = 0; row < rows; row++) {
+            int rowOffset = row * cols;
+            int mirrorRowOffset = (rows - row - 1) * cols;
+            for (int col = 0; col < midCols; col++, distanceIndex++) {
+                int pixelValue = spectrumData[rowOffset + col] & 0xFF;
+                if (pixelValue > distanceThresholds[pixelDistances[distanceIndex]]) {
+                    highFrequencyData[rowOffset + col] = (byte)255;
+                    highFrequencyData[mirrorRowOffset + cols - col - 1] = (byte)255;
                 }
             }
+        }
+        try (MatScope scope = MatScope.open()) {
+            Mat highFrequencySpectrum = MatScope.track(new Mat(rows, cols, CV_8U));
+            highFrequencySpectrum.put(0, 0, highFrequencyData);
 
             // Erosionar el espectro de alta frecuencia para eliminar pixels aislados (ruido)
-            Imgproc.erode(highFrequencySpectrum, highFrequencySpectrum, new Mat(), new Point(-1, -1), 1);
+            Imgproc.erode(highFrequencySpectrum, highFrequencySpectrum, MatScope.track(new Mat()), new Point(-1, -1), 1);
 
             // Calcular el porcentaje de pixels encendidos en el espectro de alta frecuencia
-            int totalPixels = cols * rows;
             int activatedPixels = Core.countNonZero(highFrequencySpectrum);
-            double highFrequencyPercentage = activatedPixels * 100.0 / totalPixels;
-            if (highFrequencyPercentage > disturbancesPercentage) {
-                disturbancesPercentage = highFrequencyPercentage;
-            }
+            return activatedPixels * 100.0 / totalPixels;
         }
-
-        return disturbancesPercentage;
     }
 
     private static Mat getForegroundImage(Mat image) {
-        return getForegroundImage(image, new Mat());
+        try (MatScope scope = MatScope.open()) {
+            return scope.detach(getForegroundImage(image, MatScope.track(new Mat())));
+        }
     }
 
     private static Mat getForegroundImage(Mat image, Mat foregroundImageMask) {
@@ -259,14 +244,16 @@ public class LivenessUtils {
     }
 
     private static Mat getForegroundImage(Mat image, Mat foregroundImageMask, Rect foregroundRect) {
-        Mat bgModel = new Mat();
-        Mat fgModel = new Mat();
-        Mat source = new Mat(1, 1, CvType.CV_8U, new Scalar(3));
-        Imgproc.grabCut(image, foregroundImageMask, foregroundRect, bgModel, fgModel,5, GC_INIT_WITH_RECT);
-        Core.compare(foregroundImageMask, source, foregroundImageMask, Core.CMP_EQ);
-        Mat foreground = new Mat(image.size(), CvType.CV_8UC3, new Scalar(255, 255, 255));
-        image.copyTo(foreground, foregroundImageMask);
-        return foreground;
+        try (MatScope scope = MatScope.open()) {
+            Mat bgModel = MatScope.track(new Mat());
+            Mat fgModel = MatScope.track(new Mat());
+            Mat source = MatScope.track(new Mat(1, 1, CvType.CV_8U, new Scalar(3)));
+            Imgproc.grabCut(image, foregroundImageMask, foregroundRect, bgModel, fgModel,5, GC_INIT_WITH_RECT);
+            Core.compare(foregroundImageMask, source, foregroundImageMask, Core.CMP_EQ);
+            Mat foreground = MatScope.track(new Mat(image.size(), CvType.CV_8UC3, new Scalar(255, 255, 255)));
+            image.copyTo(foreground, foregroundImageMask);
+            return scope.detach(foreground);
+        }
     }
 
     private static double[] getHOGDescriptor(Mat image, int angleAgrupationSize, Size regionSize) {
@@ -379,7 +366,7 @@ public class LivenessUtils {
     }
 
     private static Mat getLBP(Mat image, int pointsCount, int radius, boolean onlyUniformPatters) {
-        Mat lbp = Mat.zeros(image.size(), CV_8U);
+        Mat lbp = MatScope.track(Mat.zeros(image.size(), CV_8U));
         double degreesDelta = (Math.PI * 2) / pointsCount;
         int rows = image.rows();
         int cols = image.cols();
@@ -466,4 +453,27 @@ public class LivenessUtils {
         }
         return histogram;
     }
+
+    private static final class RadialDistances {
+
+        private final int[] distances;
+        private final int distancesCount;
+
+        private RadialDistances(int rows, int cols) {
+            int midCols = (int)(cols / 2.0);
+            int midRows = (int)(rows / 2.0);
+            int maxDistance = 0;
+            distances = new int[rows * midCols];
+            for (int row = 0, distanceIndex = 0; row < rows; row++) {
+                int rowDistance = midRows - row;
+                for (int col = 0; col < midCols; col++, distanceIndex++) {
+                    int colDistance = midCols - col;
+                    int pixelDistance = (int)Math.sqrt(colDistance * colDistance + rowDistance * rowDistance);
+                    distances[distanceIndex] = pixelDistance;
+                    maxDistance = Math.max(maxDistance, pixelDistance);
+                }
+            }
+            distancesCount = maxDistance + 1;
+        }
+    }
 }
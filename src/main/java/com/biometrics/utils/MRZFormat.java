@@ -0,0 +1,209 @@
+package com.biometrics.utils;
+
+import java.util.List;
+
+final class MRZFormat {
+
+    static final String DOCUMENT_CODE_FIELD = "document code";
+    static final String ISSUING_STATE_FIELD = "issuing state";
+    static final String DOCUMENT_NUMBER_FIELD = "document number";
+    static final String OPTIONAL_DATA_FIELD = "optional data";
+    static final String BIRTH_DATE_FIELD = "birth date";
+    static final String SEX_FIELD = "sex";
+    static final String EXPIRATION_DATE_FIELD = "expiration date";
+    static final String NATIONALITY_FIELD = "nationality";
+    static final String PERSONAL_NUMBER_FIELD = "personal number";
+    static final String NAME_FIELD = "name";
+
+    enum FieldType { LETTERS, DIGITS, DATE, ALPHANUMERIC, SEX }
+
+    // Documentos de identidad (3 lineas de 30 caracteres)
+    static final MRZFormat TD1 = new MRZFormat("TD1", 30, new Field[] {
+        new Field(DOCUMENT_CODE_FIELD, 0, 0, 2, FieldType.LETTERS),
+        new Field(ISSUING_STATE_FIELD, 0, 2, 5, FieldType.LETTERS),
+        new Field(DOCUMENT_NUMBER_FIELD, 0, 5, 14, FieldType.ALPHANUMERIC, 14, true),
+        new Field(OPTIONAL_DATA_FIELD, 0, 15, 30, FieldType.ALPHANUMERIC),
+        new Field(BIRTH_DATE_FIELD, 1, 0, 6, FieldType.DATE, 6),
+        new Field(SEX_FIELD, 1, 7, 8, FieldType.SEX),
+        new Field(EXPIRATION_DATE_FIELD, 1, 8, 14, FieldType.DATE, 14),
+        new Field(NATIONALITY_FIELD, 1, 15, 18, FieldType.LETTERS),
+        new Field(OPTIONAL_DATA_FIELD, 1, 18, 29, FieldType.ALPHANUMERIC),
+        new Field(NAME_FIELD, 2, 0, 30, FieldType.LETTERS)
+    }, new int[][] {{0, 5, 30}, {1, 0, 7}, {1, 8, 15}, {1, 18, 29}}, 1, 29);
+
+    // Documentos de identidad y visados de 2 lineas de 36 caracteres
+    static final MRZFormat TD2 = new MRZFormat("TD2", 36, new Field[] {
+        new Field(DOCUMENT_CODE_FIELD, 0, 0, 2, FieldType.LETTERS),
+        new Field(ISSUING_STATE_FIELD, 0, 2, 5, FieldType.LETTERS),
+        new Field(NAME_FIELD, 0, 5, 36, FieldType.LETTERS),
+        new Field(DOCUMENT_NUMBER_FIELD, 1, 0, 9, FieldType.ALPHANUMERIC, 9),
+        new Field(NATIONALITY_FIELD, 1, 10, 13, FieldType.LETTERS),
+        new Field(BIRTH_DATE_FIELD, 1, 13, 19, FieldType.DATE, 19),
+        new Field(SEX_FIELD, 1, 20, 21, FieldType.SEX),
+        new Field(EXPIRATION_DATE_FIELD, 1, 21, 27, FieldType.DATE, 27),
+        new Field(OPTIONAL_DATA_FIELD, 1, 28, 35, FieldType.ALPHANUMERIC)
+    }, new int[][] {{1, 0, 10}, {1, 13, 20}, {1, 21, 35}}, 1, 35);
+
+    // Pasaportes (2 lineas de 44 caracteres)
+    static final MRZFormat TD3 = new MRZFormat("TD3", 44, new Field[] {
+        new Field(DOCUMENT_CODE_FIELD, 0, 0, 2, FieldType.LETTERS),
+        new Field(ISSUING_STATE_FIELD, 0, 2, 5, FieldType.LETTERS),
+        new Field(NAME_FIELD, 0, 5, 44, FieldType.LETTERS),
+        new Field(DOCUMENT_NUMBER_FIELD, 1, 0, 9, FieldType.ALPHANUMERIC, 9),
+        new Field(NATIONALITY_FIELD, 1, 10, 13, FieldType.LETTERS),
+        new Field(BIRTH_DATE_FIELD, 1, 13, 19, FieldType.DATE, 19),
+        new Field(SEX_FIELD, 1, 20, 21, FieldType.SEX),
+        new Field(EXPIRATION_DATE_FIELD, 1, 21, 27, FieldType.DATE, 27),
+        new Field(PERSONAL_NUMBER_FIELD, 1, 28, 42, FieldType.ALPHANUMERIC, 42)
+    }, new int[][] {{1, 0, 10}, {1, 13, 20}, {1, 21, 43}}, 1, 43);
+
+    private static final MRZFormat[] FORMATS = {TD1, TD2, TD3};
+
+    private final String name;
+    private final int linesCount;
+    private final int lineLength;
+    private final int nameLine;
+    private final Field[] fields;
+    private final int[][] compositeRanges;
+    private final int compositeCheckDigitLine;
+    private final int compositeCheckDigitIndex;
+
+    private MRZFormat(String name, int lineLength, Field[] fields, int[][] compositeRanges, int compositeCheckDigitLine, int compositeCheckDigitIndex) {
+        int linesCount = 0;
+        int nameLine = 0;
+        for (Field field : fields) {
+            linesCount = Math.max(linesCount, field.line + 1);
+            if (field.name.equals(NAME_FIELD)) {
+                nameLine = field.line;
+            }
+        }
+        this.name = name;
+        this.linesCount = linesCount;
+        this.lineLength = lineLength;
+        this.nameLine = nameLine;
+        this.fields = fields;
+        this.compositeRanges = compositeRanges;
+        this.compositeCheckDigitLine = compositeCheckDigitLine;
+        this.compositeCheckDigitIndex = compositeCheckDigitIndex;
+    }
+
+    static MRZFormat detect(List<String> lines) {
+        // Formato con la cantidad de lineas leidas y el largo de linea más cercano al leido
+        MRZFormat detectedFormat = null;
+        int detectedLengthDifference = Integer.MAX_VALUE;
+        int totalLength = 0;
+        for (String line : lines) {
+            totalLength += line.length();
+        }
+        for (MRZFormat format : FORMATS) {
+            if (format.linesCount == lines.size()) {
+                int lengthDifference = Math.abs(totalLength - format.linesCount * format.lineLength);
+                if (lengthDifference < detectedLengthDifference) {
+                    detectedFormat = format;
+                    detectedLengthDifference = lengthDifference;
+                }
+            }
+        }
+        return detectedFormat;
+    }
+
+    static MRZFormat fromCode(String mrzCode) {
+        MRZFormat codeFormat = null;
+        for (MRZFormat format : FORMATS) {
+            if (format.getCodeLength() == mrzCode.length()) {
+                codeFormat = format;
+                break;
+            }
+        }
+        return codeFormat;
+    }
+
+    static int getNameLine(int linesCount) {
+        int nameLine = -1;
+        for (MRZFormat format : FORMATS) {
+            if (format.linesCount == linesCount) {
+                nameLine = format.nameLine;
+                break;
+            }
+        }
+        return nameLine;
+    }
+
+    static boolean isLinesCount(int linesCount) {
+        return getNameLine(linesCount) >= 0;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getLinesCount() {
+        return linesCount;
+    }
+
+    int getLineLength() {
+        return lineLength;
+    }
+
+    int getCodeLength() {
+        return linesCount * lineLength;
+    }
+
+    Field[] getFields() {
+        return fields;
+    }
+
+    int[][] getCompositeRanges() {
+        return compositeRanges;
+    }
+
+    int getCompositeCheckDigitLine() {
+        return compositeCheckDigitLine;
+    }
+
+    int getCompositeCheckDigitIndex() {
+        return compositeCheckDigitIndex;
+    }
+
+    String getFieldValue(String mrzCode, String fieldName) {
+        String value = null;
+        for (Field field : fields) {
+            if (field.name.equals(fieldName)) {
+                int lineOffset = field.line * lineLength;
+                value = mrzCode.substring(lineOffset + field.start, lineOffset + field.end);
+                break;
+            }
+        }
+        return value;
+    }
+
+    static final class Field {
+
+        final String name;
+        final int line;
+        final int start;
+        final int end;
+        final FieldType type;
+        final int checkDigitIndex;
+        final boolean fillerTerminated;
+
+        private Field(String name, int line, int start, int end, FieldType type) {
+            this(name, line, start, end, type, -1);
+        }
+
+        private Field(String name, int line, int start, int end, FieldType type, int checkDigitIndex) {
+            this(name, line, start, end, type, checkDigitIndex, false);
+        }
+
+        // Los campos terminados por relleno pueden ser más cortos, con el digito verificador a continuación del primer relleno
+        private Field(String name, int line, int start, int end, FieldType type, int checkDigitIndex, boolean fillerTerminated) {
+            this.name = name;
+            this.line = line;
+            this.start = start;
+            this.end = end;
+            this.type = type;
+            this.checkDigitIndex = checkDigitIndex;
+            this.fillerTerminated = fillerTerminated;
+        }
+    }
+}
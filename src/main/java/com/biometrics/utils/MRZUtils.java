@@ -1,24 +1,32 @@
 package com.biometrics.utils;
 
+import com.biometrics.Configuration;
+import com.biometrics.Metrics;
 import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
 import net.sourceforge.tess4j.util.LoadLibs;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
 import java.awt.image.BufferedImage;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
+import static net.sourceforge.tess4j.ITessAPI.TessPageSegMode.PSM_SINGLE_LINE;
 import static org.neogroup.warp.Warp.getLogger;
 import static org.opencv.core.Core.ROTATE_180;
 import static org.opencv.core.CvType.CV_32F;
 
+// Los scopes de detección y lectura liberan las matrices registradas con MatScope.track sin referenciarse en el try
+@SuppressWarnings("try")
 public class MRZUtils {
 
     private static final String EMPTY = "";
     private static final String EMPTY_SPACE = " ";
     private static final String RETURN = "\n";
     private static final String ID_PREFIX = "ID";
-    private static final String ID_ARG_PREFIX = "IDARG";
     private static final String[] ID_FAIL_PREFIXES = {"1ID", "1D", "IO"};
     private static final String FILLER_SEPARATOR = "<<";
     private static final char FILLER = '<';
@@ -43,45 +51,119 @@ public class MRZUtils {
     private static final char S = 'S';
     private static final char Z = 'Z';
 
-    private static final Tesseract tesseract;
+    private static final String OCR_POOL_SIZE_PROPERTY_NAME = "mrz_ocr_pool_size";
+    private static final String OCR_POOL_TIMEOUT_PROPERTY_NAME = "mrz_ocr_pool_timeout";
+
+    private static final String STAGE_TIMER_NAME = "mrz_stage";
+    private static final String STAGE_LABEL_NAME = "stage";
+
+    private static final String OCR_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789<";
+    private static final String OCR_NAME_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ<";
+    private static final int DEFAULT_PAGE_SEG_MODE = -1;
+    private static final int MAX_LINES_COUNT = MRZFormat.TD1.getLinesCount();
+    private static final double LINE_TRANSITIONS_THRESHOLD_RATIO = 0.4;
+    private static final double LINE_MARGIN_RATIO = 0.2;
+    private static final double SCALED_LINES_FACTOR = 2;
+
+    // Digitos con los que puede confundirse cada caracter leido en un campo numérico
+    private static final Map<Character, String> CONFUSABLE_DIGITS = Map.ofEntries(
+        Map.entry('0', "8"), Map.entry('1', "7"), Map.entry('3', "8"), Map.entry('5', "6"), Map.entry('6', "58"),
+        Map.entry('7', "1"), Map.entry('8', "0369"), Map.entry('9', "8"), Map.entry('B', "3"), Map.entry('G', "0"),
+        Map.entry('S', "8"), Map.entry('T', "1"), Map.entry('Z', "7"));
+
+    // Letras y digitos que suelen confundirse entre sí en los campos alfanuméricos
+    private static final Map<Character, String> CONFUSABLE_CHARACTERS = Map.ofEntries(
+        Map.entry('0', "ODQ"), Map.entry('O', "0"), Map.entry('D', "0"), Map.entry('Q', "0"), Map.entry('1', "I"),
+        Map.entry('I', "1"), Map.entry('2', "Z"), Map.entry('Z', "2"), Map.entry('4', "A"), Map.entry('A', "4"),
+        Map.entry('5', "S"), Map.entry('S', "5"), Map.entry('6', "G"), Map.entry('G', "6"), Map.entry('7', "T"),
+        Map.entry('T', "7"), Map.entry('8', "B"), Map.entry('B', "8"));
+
+    static final int IMAGE_MIN_SIZE = 800;
+    private static final double ORIENTATION_SAMPLE_RATIO = 1 / 3.0;
+    private static final double BORDER_MARGIN_RATIO = 0.05;
+    private static final Scalar BLACK = new Scalar(0);
+    private static final Scalar WHITE = new Scalar(255);
+
+    private static final ThreadLocal<DetectionKernels> DETECTION_KERNELS = ThreadLocal.withInitial(DetectionKernels::new);
+
+    private static final TesseractPool tesseractPool;
+    private static final ExecutorService OCR_EXECUTOR;
+    private static final ScanResultCache resultCache = new ScanResultCache("mrz_result");
     private static final int[] MRZ_WEIGHTS = {7, 3, 1};
+    private static final int[] MRZ_CHARACTER_VALUES = new int[Z + 1];
     private static final TimeZone GMT_TIME_ZONE = TimeZone.getTimeZone("GMT");
 
     static {
-        tesseract = new Tesseract();
-        tesseract.setDatapath(LoadLibs.extractTessResources("tessdata").getAbsolutePath());
-        tesseract.setLanguage("spa");
-        tesseract.setTessVariable("debug_file", "/dev/null");
-        tesseract.setTessVariable("tessedit_char_whitelist", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789<");
+        // Valores de cada caracter para el calculo de los digitos verificadores
+        Arrays.fill(MRZ_CHARACTER_VALUES, -1);
+        MRZ_CHARACTER_VALUES[FILLER] = 0;
+        for (char character = ZERO; character <= NINE; character++) {
+            MRZ_CHARACTER_VALUES[character] = character - ZERO;
+        }
+        for (char character = A; character <= Z; character++) {
+            MRZ_CHARACTER_VALUES[character] = character - A + 10;
+        }
+
+        String dataPath = LoadLibs.extractTessResources("tessdata").getAbsolutePath();
+        int poolSize = Configuration.getInt(OCR_POOL_SIZE_PROPERTY_NAME, Runtime.getRuntime().availableProcessors());
+        long poolTimeout = Configuration.getLong(OCR_POOL_TIMEOUT_PROPERTY_NAME, 10000);
+        tesseractPool = new TesseractPool("mrz_ocr_engine", poolSize, poolTimeout, () -> createTesseract(dataPath));
+        OCR_EXECUTOR = ExecutorUtils.createBoundedExecutor("mrz_ocr", poolSize, 64);
     }
 
     public static String readCode (byte[] imageBytes) {
+        return resultCache.get(() -> scanCode(imageBytes), imageBytes);
+    }
+
+    static String scanCode(byte[] imageBytes) {
         String mrzCode = null;
         if (imageBytes.length > 0) {
-            Mat mrzMat = detectCode(OpenCVUtils.getImage(imageBytes));
-            if (mrzMat != null) {
-                mrzCode = readCode(OpenCVUtils.getBufferedImage(mrzMat));
-                if (mrzCode == null) {
-                    Core.rotate(mrzMat, mrzMat, ROTATE_180);
-                    mrzCode = readCode(OpenCVUtils.getBufferedImage(mrzMat));
+            try (MatScope scope = MatScope.open()) {
+                Mat image = timeStage("decode", () -> OpenCVUtils.getScaledImage(imageBytes, IMAGE_MIN_SIZE));
+                Mat mrzMat = timeStage("detection", () -> detectCode(image));
+                if (mrzMat != null) {
+                    boolean rotated = timeStage("orientation", () -> isRotated(mrzMat));
+                    if (rotated) {
+                        Core.rotate(mrzMat, mrzMat, ROTATE_180);
+                    }
+                    Metrics.increment("mrz_orientation", "orientation", rotated ? "rotated" : "upright");
+                    mrzCode = timeStage("ocr", () -> readCode(mrzMat));
                 }
             }
         }
         return mrzCode;
     }
 
+    static boolean isRotated(Mat mrzMat) {
+        // En una MRZ al derecho la tinta se concentra a la izquierda, ya que los rellenos "<" completan las lineas por la derecha.
+        // Solo se tienen en cuenta las filas de texto para que los bordes del documento no afecten la comparación
+        try (MatScope scope = MatScope.open()) {
+            int sampleWidth = (int)(mrzMat.cols() * ORIENTATION_SAMPLE_RATIO);
+            int leftInk = 0;
+            int rightInk = 0;
+            List<int[]> lineBands = detectLineBands(mrzMat);
+            if (lineBands.isEmpty()) {
+                lineBands = Collections.singletonList(new int[] {0, mrzMat.rows()});
+            }
+            for (int[] lineBand : lineBands) {
+                int sampleArea = sampleWidth * (lineBand[1] - lineBand[0]);
+                leftInk += sampleArea - Core.countNonZero(MatScope.track(mrzMat.submat(new Rect(0, lineBand[0], sampleWidth, lineBand[1] - lineBand[0]))));
+                rightInk += sampleArea - Core.countNonZero(MatScope.track(mrzMat.submat(new Rect(mrzMat.cols() - sampleWidth, lineBand[0], sampleWidth, lineBand[1] - lineBand[0]))));
+            }
+            return rightInk > leftInk;
+        }
+    }
+
     public static Map<String, Object> parseCode(String mrzCode) {
         Map<String, Object> documentData = null;
         try {
-            if (mrzCode.startsWith(ID_ARG_PREFIX)) {
-                String section1 = mrzCode.substring(0, 30);
-                String section2 = mrzCode.substring(30, 60);
-                String section3 = mrzCode.substring(60);
-                String documentField = section1.substring(5, section1.indexOf("<"));
-                String birthDateField = section2.substring(0, 6);
-                String genderField = section2.substring(7, 8);
-                String expirationDateField = section2.substring(8, 14);
-                String[] name = section3.split(FILLER_SEPARATOR);
+            MRZFormat format = MRZFormat.fromCode(mrzCode);
+            if (format != null) {
+                String documentField = format.getFieldValue(mrzCode, MRZFormat.DOCUMENT_NUMBER_FIELD);
+                String birthDateField = format.getFieldValue(mrzCode, MRZFormat.BIRTH_DATE_FIELD);
+                String genderField = format.getFieldValue(mrzCode, MRZFormat.SEX_FIELD);
+                String expirationDateField = format.getFieldValue(mrzCode, MRZFormat.EXPIRATION_DATE_FIELD);
+                String[] name = format.getFieldValue(mrzCode, MRZFormat.NAME_FIELD).split(FILLER_SEPARATOR);
                 String lastNameField = name[0].replace(FILLER, SPACE);
                 String firstNameField = name[1].replace(FILLER, SPACE);
                 documentData = new HashMap<>();
@@ -100,116 +182,419 @@ public class MRZUtils {
         return documentData;
     }
 
-    private static String readCode(BufferedImage image) {
+    private static <T> T timeStage(String stage, Supplier<T> task) {
+        return Metrics.time(STAGE_TIMER_NAME, task, STAGE_LABEL_NAME, stage);
+    }
+
+    private static Tesseract createTesseract(String dataPath) {
+        Tesseract tesseract = new Tesseract();
+        tesseract.setDatapath(dataPath);
+        tesseract.setLanguage("spa");
+        tesseract.setTessVariable("debug_file", "/dev/null");
+        return tesseract;
+    }
+
+    static String readCode(Mat mrzMat) {
+        return readCode(mrzMat, true);
+    }
+
+    private static String readCode(Mat mrzMat, boolean retry) {
+        String[] mrzCodeLines;
+        List<Mat> lineImages = detectLines(mrzMat);
+        if (lineImages.isEmpty()) {
+            // Si no se pudieron separar las lineas se reconoce la MRZ como un bloque
+            Metrics.increment("mrz_ocr_mode", "mode", "block");
+            String mrzCodeText = recognizeText(OpenCVUtils.getBufferedImage(mrzMat), DEFAULT_PAGE_SEG_MODE, OCR_CHARACTERS);
+            mrzCodeLines = mrzCodeText != null ? mrzCodeText.split(RETURN) : new String[0];
+        } else {
+            // Reconocimiento de cada linea por separado (y en paralelo), restringiendo los caracteres de la linea de nombres
+            Metrics.increment("mrz_ocr_mode", "mode", "lines");
+            mrzCodeLines = readLines(lineImages, 1);
+        }
+        String mrzCode = processCode(mrzCodeLines);
+        if (mrzCode == null && retry) {
+            if (isCodeText(getCodeLines(mrzCodeLines))) {
+                // Con texto de MRZ la orientación es correcta y las lineas se reintentan como bloque y ampliadas,
+                // que el OCR lee con otros errores
+                if (!lineImages.isEmpty()) {
+                    Metrics.increment("mrz_ocr_mode", "mode", "block");
+                    mrzCode = readCode(OpenCVUtils.getBufferedImage(mrzMat));
+                    if (mrzCode == null) {
+                        Metrics.increment("mrz_ocr_mode", "mode", "scaled_lines");
+                        mrzCode = processCode(readLines(lineImages, SCALED_LINES_FACTOR));
+                    }
+                }
+            } else {
+                // Sin texto de MRZ se intenta una única vez en la orientación opuesta, sin reintentos
+                try (MatScope scope = MatScope.open()) {
+                    Mat rotatedMrzMat = MatScope.track(new Mat());
+                    Core.rotate(mrzMat, rotatedMrzMat, ROTATE_180);
+                    mrzCode = readCode(rotatedMrzMat, false);
+                    Metrics.increment("mrz_orientation_fallbacks", "result", mrzCode != null ? "decoded" : "failed");
+                }
+            }
+        }
+        return mrzCode;
+    }
+
+    static String readCode(BufferedImage image) {
+        String mrzCodeText = recognizeText(image, DEFAULT_PAGE_SEG_MODE, OCR_CHARACTERS);
+        return mrzCodeText != null ? processCode(mrzCodeText.split(RETURN)) : null;
+    }
+
+    static List<Mat> detectLines(Mat mrzMat) {
+        List<Mat> lineImages = new ArrayList<>();
+        List<int[]> lineBands = detectLineBands(mrzMat);
+        if (MRZFormat.isLinesCount(lineBands.size())) {
+            for (int i = 0; i < lineBands.size(); i++) {
+                int[] lineBand = lineBands.get(i);
+                int padding = (lineBand[1] - lineBand[0]) / 4;
+                int top = i > 0 ? (lineBands.get(i - 1)[1] + lineBand[0]) / 2 : Math.max(0, lineBand[0] - padding);
+                int bottom = i < lineBands.size() - 1 ? (lineBand[1] + lineBands.get(i + 1)[0]) / 2 : Math.min(mrzMat.rows(), lineBand[1] + padding);
+                Mat lineImage = MatScope.track(MatScope.track(mrzMat.submat(new Rect(0, top, mrzMat.cols(), bottom - top))).clone());
+                removeLineFragments(lineImage);
+
+                // Margen blanco alrededor de la linea, sin el cual el OCR suele agregar caracteres en los bordes
+                int margin = (int)(lineImage.rows() * LINE_MARGIN_RATIO);
+                Mat marginLineImage = MatScope.track(new Mat());
+                Core.copyMakeBorder(lineImage, marginLineImage, margin, margin, margin, margin, Core.BORDER_CONSTANT, WHITE);
+                lineImages.add(marginLineImage);
+            }
+        }
+        return lineImages;
+    }
+
+    private static void removeLineFragments(Mat lineImage) {
+        // Se borran las manchas bajas que tocan el borde superior o inferior de la linea (restos de las lineas vecinas) y las que
+        // la atraviesan de arriba a abajo (bordes del documento), sin tocar los caracteres que llegan a alguno de los bordes
+        try (MatScope scope = MatScope.open()) {
+            Mat inkImage = MatScope.track(new Mat());
+            Core.bitwise_not(lineImage, inkImage);
+            Mat labels = MatScope.track(new Mat());
+            Mat stats = MatScope.track(new Mat());
+            Mat centroids = MatScope.track(new Mat());
+            int labelsCount = Imgproc.connectedComponentsWithStats(inkImage, labels, stats, centroids, 8, CvType.CV_32S);
+            int[] labelsStats = new int[labelsCount * Imgproc.CC_STAT_MAX];
+            stats.get(0, 0, labelsStats);
+            Mat fragmentMask = MatScope.track(new Mat());
+            for (int label = 1; label < labelsCount; label++) {
+                int labelTop = labelsStats[label * Imgproc.CC_STAT_MAX + Imgproc.CC_STAT_TOP];
+                int labelHeight = labelsStats[label * Imgproc.CC_STAT_MAX + Imgproc.CC_STAT_HEIGHT];
+                boolean touchesTop = labelTop == 0;
+                boolean touchesBottom = labelTop + labelHeight == lineImage.rows();
+                if ((touchesTop || touchesBottom) && (labelHeight < lineImage.rows() / 2 || (touchesTop && touchesBottom))) {
+                    Core.compare(labels, new Scalar(label), fragmentMask, Core.CMP_EQ);
+                    lineImage.setTo(WHITE, fragmentMask);
+                }
+            }
+        }
+    }
+
+    private static List<int[]> detectLineBands(Mat mrzMat) {
+        List<int[]> lineBands = new ArrayList<>();
+        try (MatScope scope = MatScope.open()) {
+            // Perfil horizontal de transiciones entre tinta y fondo por fila, alto en el texto y bajo en bordes y manchas
+            Mat transitionsMat = MatScope.track(new Mat());
+            Core.absdiff(MatScope.track(mrzMat.colRange(1, mrzMat.cols())), MatScope.track(mrzMat.colRange(0, mrzMat.cols() - 1)), transitionsMat);
+            Mat transitionsProfileMat = MatScope.track(new Mat());
+            Core.reduce(transitionsMat, transitionsProfileMat, 1, Core.REDUCE_SUM, CvType.CV_32S);
+            int[] transitionsProfile = new int[mrzMat.rows()];
+            transitionsProfileMat.get(0, 0, transitionsProfile);
+            int maxTransitions = 0;
+            for (int transitions : transitionsProfile) {
+                maxTransitions = Math.max(maxTransitions, transitions);
+            }
+
+            // Bandas de filas con texto, de las que se toman las más altas como lineas
+            int transitionsThreshold = (int)(maxTransitions * LINE_TRANSITIONS_THRESHOLD_RATIO);
+            int bandStart = -1;
+            for (int row = 0; row <= transitionsProfile.length; row++) {
+                boolean isTextRow = row < transitionsProfile.length && maxTransitions > 0 && transitionsProfile[row] > transitionsThreshold;
+                if (isTextRow && bandStart < 0) {
+                    bandStart = row;
+                } else if (!isTextRow && bandStart >= 0) {
+                    lineBands.add(new int[] {bandStart, row});
+                    bandStart = -1;
+                }
+            }
+            if (lineBands.size() > MAX_LINES_COUNT) {
+                lineBands.sort(Comparator.comparingInt(lineBand -> lineBand[0] - lineBand[1]));
+                lineBands = new ArrayList<>(lineBands.subList(0, MAX_LINES_COUNT));
+                lineBands.sort(Comparator.comparingInt(lineBand -> lineBand[0]));
+            }
+        }
+        return lineBands;
+    }
+
+    private static String[] readLines(List<Mat> lineImages, double scaleFactor) {
+        try (MatScope scope = MatScope.open()) {
+            List<BufferedImage> lineBufferedImages = new ArrayList<>();
+            for (Mat lineImage : lineImages) {
+                if (scaleFactor != 1) {
+                    Mat scaledLineImage = MatScope.track(new Mat());
+                    Imgproc.resize(lineImage, scaledLineImage, new Size(), scaleFactor, scaleFactor, Imgproc.INTER_CUBIC);
+                    lineImage = scaledLineImage;
+                }
+                lineBufferedImages.add(OpenCVUtils.getBufferedImage(lineImage));
+            }
+            return recognizeLines(lineBufferedImages);
+        }
+    }
+
+    private static String[] recognizeLines(List<BufferedImage> lineImages) {
+        String[] lines = new String[lineImages.size()];
+        int nameLine = MRZFormat.getNameLine(lineImages.size());
+        List<Future<String>> lineFutures = new ArrayList<>();
+        try {
+            for (int i = 1; i < lineImages.size(); i++) {
+                BufferedImage lineImage = lineImages.get(i);
+                String lineCharacters = i == nameLine ? OCR_NAME_CHARACTERS : OCR_CHARACTERS;
+                lineFutures.add(OCR_EXECUTOR.submit(() -> recognizeText(lineImage, PSM_SINGLE_LINE, lineCharacters)));
+            }
+            lines[0] = recognizeText(lineImages.get(0), PSM_SINGLE_LINE, nameLine == 0 ? OCR_NAME_CHARACTERS : OCR_CHARACTERS);
+            for (int i = 0; i < lineFutures.size(); i++) {
+                lines[i + 1] = ExecutorUtils.getResult(lineFutures.get(i));
+            }
+        } catch (RuntimeException ex) {
+            lineFutures.forEach(ExecutorUtils::awaitQuietly);
+            throw ex;
+        }
+        return lines;
+    }
+
+    private static String recognizeText(BufferedImage image, int pageSegMode, String characters) {
+        String text = null;
+        Tesseract tesseract = tesseractPool.borrowEngine();
+        try {
+            tesseract.setPageSegMode(pageSegMode);
+            tesseract.setTessVariable("tessedit_char_whitelist", characters);
+            text = tesseract.doOCR(image);
+        } catch (TesseractException ex) {
+            getLogger().warn("MRZ text could not be recognized: " + ex.getMessage());
+        } finally {
+            tesseractPool.releaseEngine(tesseract);
+        }
+        return text;
+    }
+
+    private static List<String> getCodeLines(String[] mrzCodeLines) {
+        List<String> lines = new ArrayList<>();
+        for (String mrzCodeLine : mrzCodeLines) {
+            if (mrzCodeLine != null) {
+                mrzCodeLine = mrzCodeLine.replace(EMPTY_SPACE, EMPTY).trim();
+                if (!mrzCodeLine.isEmpty()) {
+                    lines.add(mrzCodeLine);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static boolean isCodeText(List<String> lines) {
+        String mrzCodeText = String.join(RETURN, lines);
+        return mrzCodeText.length() > 40 && mrzCodeText.indexOf("<<") > 0;
+    }
+
+    static String processCode(String[] mrzCodeLines) {
         String mrzCode = null;
-        String mrzCodeText = null;
+        List<String> lines = getCodeLines(mrzCodeLines);
+        String mrzCodeText = String.join(RETURN, lines);
         try {
-            mrzCodeText = tesseract.doOCR(image);
-            if (mrzCodeText != null && !mrzCodeText.isEmpty() && mrzCodeText.length() > 40 && mrzCodeText.indexOf("<<") > 0) {
-                mrzCodeText = mrzCodeText.replace(EMPTY_SPACE, EMPTY);
+            if (isCodeText(lines)) {
                 for (String idFailPrefix : ID_FAIL_PREFIXES) {
-                    if (mrzCodeText.startsWith(idFailPrefix)) {
-                        mrzCodeText = mrzCodeText.replaceFirst(idFailPrefix, ID_PREFIX);
+                    if (lines.get(0).startsWith(idFailPrefix)) {
+                        lines.set(0, lines.get(0).replaceFirst(idFailPrefix, ID_PREFIX));
                     }
                 }
-                if (mrzCodeText.startsWith(ID_ARG_PREFIX)) {
-
-                    StringBuilder mrzCodeBuilder = new StringBuilder();
-                    mrzCodeBuilder.append(ID_ARG_PREFIX);
-                    String[] sections = mrzCodeText.split(RETURN);
+                MRZFormat format = MRZFormat.detect(lines);
+                if (format == null) {
+                    throw new RuntimeException("Unrecognized mrz code type");
+                }
 
-                    //Linea 1
-                    String currentLine = sections[0];
-                    int currentIndex = currentLine.indexOf(FILLER);
-                    for (int i = 5; i < currentIndex; i++) {
-                        mrzCodeBuilder.append(readDigit(currentLine.charAt(i)));
-                    }
-                    String documentField = mrzCodeBuilder.substring(5, currentIndex);
-                    char documentCalculatedCheckSum = calculateMRZChecksumDigitChar(documentField);
-                    mrzCodeBuilder.append(FILLER);
-                    char documentCheckSum = readDigit(currentLine.charAt(currentIndex + 1));
-                    mrzCodeBuilder.append(documentCheckSum);
-                    for (int i = mrzCodeBuilder.length(); i < 30; i++) {
-                        mrzCodeBuilder.append(FILLER);
+                // Ajuste de las lineas al largo del formato (conservando el digito verificador general al final de su linea)
+                String[] formatLines = new String[format.getLinesCount()];
+                StringBuilder[] mrzLines = new StringBuilder[format.getLinesCount()];
+                for (int i = 0; i < formatLines.length; i++) {
+                    String line = lines.get(i);
+                    if (i == format.getCompositeCheckDigitLine() && format.getCompositeCheckDigitIndex() == format.getLineLength() - 1) {
+                        formatLines[i] = fitLine(line.substring(0, line.length() - 1), format.getLineLength() - 1) + line.charAt(line.length() - 1);
+                    } else {
+                        formatLines[i] = fitLine(line, format.getLineLength());
                     }
+                    mrzLines[i] = new StringBuilder(formatLines[i]);
+                }
 
-                    //Linea 2
-                    currentLine = sections[1];
-                    for (int i = 0; i <= 5; i++) {
-                        mrzCodeBuilder.append(readDigit(currentLine.charAt(i)));
-                    }
-                    String birthDateField = mrzCodeBuilder.substring(mrzCodeBuilder.length() - 6);
-                    char birthDateCalculatedCheckSum = calculateMRZChecksumDigitChar(birthDateField);
-                    char birthDateCheckSum = readDigit(currentLine.charAt(6));
-                    mrzCodeBuilder.append(birthDateCheckSum);
-                    mrzCodeBuilder.append(currentLine.charAt(7));
-                    for (int i = 8; i <= 13; i++) {
-                        mrzCodeBuilder.append(readDigit(currentLine.charAt(i)));
+                // Lectura de los campos según los caracteres admitidos por cada uno
+                for (MRZFormat.Field field : format.getFields()) {
+                    StringBuilder mrzLine = mrzLines[field.line];
+                    for (int i = field.start; i < field.end; i++) {
+                        mrzLine.setCharAt(i, readCharacter(mrzLine.charAt(i), field.type));
                     }
-                    String expirationDateField = mrzCodeBuilder.substring(mrzCodeBuilder.length() - 6);
-                    char expirationDateCalculatedCheckSum = calculateMRZChecksumDigitChar(expirationDateField);
-                    char expirationDateCheckSum = readDigit(currentLine.charAt(14));
-                    mrzCodeBuilder.append(expirationDateCheckSum);
-                    currentIndex = currentLine.indexOf(FILLER, 15);
-                    for (int i = 15; i < currentIndex; i++) {
-                        mrzCodeBuilder.append(readLetter(currentLine.charAt(i)));
+                }
+                for (MRZFormat.Field field : format.getFields()) {
+                    if (field.checkDigitIndex >= 0) {
+                        readCheckedField(formatLines[field.line], mrzLines[field.line], field);
                     }
-                    for (int i = mrzCodeBuilder.length(); i < 59; i++) {
-                        mrzCodeBuilder.append('<');
+                }
+
+                //Chequeo del digito verificador general
+                StringBuilder compositeLine = mrzLines[format.getCompositeCheckDigitLine()];
+                char mrzChecksum = readDigit(compositeLine.charAt(format.getCompositeCheckDigitIndex()));
+                compositeLine.setCharAt(format.getCompositeCheckDigitIndex(), mrzChecksum);
+                if (calculateCompositeChecksumDigitChar(format, mrzLines) != mrzChecksum) {
+
+                    // Los datos opcionales no tienen digito verificador propio y el OCR suele leer manchas en ellos,
+                    // por lo que solo se descartan si vaciándolos se cumple el digito verificador general
+                    StringBuilder[] clearedMrzLines = new StringBuilder[mrzLines.length];
+                    boolean optionalDataCleared = false;
+                    for (int i = 0; i < mrzLines.length; i++) {
+                        clearedMrzLines[i] = new StringBuilder(mrzLines[i]);
                     }
-                    char mrzChecksum = currentLine.charAt(currentLine.length() - 1);
-                    mrzCodeBuilder.append(mrzChecksum);
-
-                    //Linea 3
-                    currentLine = sections[2];
-                    for (int i = 0; i < currentLine.length(); i++) {
-                        char character = currentLine.charAt(i);
-                        if (character != FILLER) {
-                            mrzCodeBuilder.append(readLetter(character));
-                        } else {
-                            mrzCodeBuilder.append(character);
+                    for (MRZFormat.Field field : format.getFields()) {
+                        if (field.name.equals(MRZFormat.OPTIONAL_DATA_FIELD) && field.checkDigitIndex < 0) {
+                            for (int i = field.start; i < field.end; i++) {
+                                optionalDataCleared |= clearedMrzLines[field.line].charAt(i) != FILLER;
+                                clearedMrzLines[field.line].setCharAt(i, FILLER);
+                            }
                         }
                     }
-                    int currentLength = mrzCodeBuilder.length();
-                    if (currentLength < 90) {
-                        for (int i = 0; i < (90 - currentLength); i++) {
-                            mrzCodeBuilder.append(FILLER);
-                        }
-                    } else if (currentLength > 90) {
-                        mrzCodeBuilder.delete(90, currentLength);
+                    if (!optionalDataCleared || calculateCompositeChecksumDigitChar(format, clearedMrzLines) != mrzChecksum) {
+                        throw new RuntimeException("Failed mrz checksum");
                     }
+                    Metrics.increment("mrz_optional_data_discarded");
+                    mrzLines = clearedMrzLines;
+                }
+                mrzCode = String.join(EMPTY, mrzLines);
+                Metrics.increment("mrz_formats", "format", format.getName());
+            }
+        } catch (Exception ex) {
+            if (!mrzCodeText.isEmpty()) {
+                getLogger().warn("MRZ code \"" + mrzCodeText.replaceAll("\n","" ) + "\" could not be processed: " + ex.getMessage());
+            }
+        }
+        return mrzCode;
+    }
 
-                    //Chequeos de checksum
-                    if (documentCheckSum != documentCalculatedCheckSum) {
-                        throw new RuntimeException("Failed document checksum");
-                    }
-                    if (birthDateCheckSum != birthDateCalculatedCheckSum) {
-                        throw new RuntimeException("Failed birth date checksum");
-                    }
-                    if (expirationDateCheckSum != expirationDateCalculatedCheckSum) {
-                        throw new RuntimeException("Failed expiration date checksum");
-                    }
+    private static char calculateCompositeChecksumDigitChar(MRZFormat format, StringBuilder[] mrzLines) {
+        StringBuilder compositeField = new StringBuilder();
+        for (int[] compositeRange : format.getCompositeRanges()) {
+            compositeField.append(mrzLines[compositeRange[0]], compositeRange[1], compositeRange[2]);
+        }
+        return calculateMRZChecksumDigitChar(compositeField);
+    }
+
+    private static String fitLine(String line, int length) {
+        StringBuilder fittedLine = new StringBuilder(line.length() > length ? line.substring(0, length) : line);
+        while (fittedLine.length() < length) {
+            fittedLine.append(FILLER);
+        }
+        return fittedLine.toString();
+    }
+
+    private static char readCharacter(char character, MRZFormat.FieldType fieldType) {
+        switch (fieldType) {
+            case LETTERS: return character != FILLER ? readLetter(character) : character;
+            case DIGITS:
+            case DATE: return readDigit(character);
+            default: return character;
+        }
+    }
+
+    private static void readCheckedField(String formatLine, StringBuilder mrzLine, MRZFormat.Field field) {
+        char checkDigitCharacter = formatLine.charAt(field.checkDigitIndex);
+        String fieldValue = mrzLine.substring(field.start, field.end);
+        if (checkDigitCharacter == FILLER && fieldValue.chars().allMatch(character -> character == FILLER)) {
+            // Campo opcional vacío, sin digito verificador
+            return;
+        }
+        if (field.fillerTerminated && readFillerTerminatedField(mrzLine, field)) {
+            return;
+        }
+        mrzLine.setCharAt(field.checkDigitIndex, readDigit(checkDigitCharacter));
+        if (field.type == MRZFormat.FieldType.ALPHANUMERIC) {
+            // Si la lectura numérica cumple con el digito verificador se prefiere a la alfanumérica (el caso de los documentos
+            // argentinos), ya que el OCR confunde 0 con D y 8 con B, letras con las que a veces también se cumple el digito verificador
+            String digitsValue = readDigits(fieldValue);
+            if (digitsValue != null && calculateMRZChecksumDigitChar(digitsValue) == mrzLine.charAt(field.checkDigitIndex)) {
+                mrzLine.replace(field.start, field.end, digitsValue);
+                fieldValue = digitsValue;
+            }
+        }
+        if (calculateMRZChecksumDigitChar(fieldValue) != mrzLine.charAt(field.checkDigitIndex)) {
 
-                    String mrzField = documentField + '<' + documentCheckSum + birthDateField + birthDateCheckSum + expirationDateField + expirationDateCheckSum;
-                    char mrzCalculatedChecksum = calculateMRZChecksumDigitChar(mrzField);
-                    if (Character.isDigit(mrzChecksum)) {
-                        if (mrzChecksum != mrzCalculatedChecksum) {
-                            throw new RuntimeException("Failed mrz checksum");
+            // Reparación reemplazando un único caracter confundible (incluido el propio digito verificador),
+            // siempre que haya un solo candidato válido para el campo que cumpla con el digito verificador
+            StringBuilder candidate = new StringBuilder(fieldValue).append(mrzLine.charAt(field.checkDigitIndex));
+            String repairedField = null;
+            int candidatesCount = 0;
+            int checkDigitIndex = candidate.length() - 1;
+            for (int i = 0; i < candidate.length(); i++) {
+                char originalCharacter = formatLine.charAt(i < checkDigitIndex ? field.start + i : field.checkDigitIndex);
+                char character = candidate.charAt(i);
+                String confusableCharacters = i < checkDigitIndex && field.type == MRZFormat.FieldType.ALPHANUMERIC
+                    ? CONFUSABLE_CHARACTERS.getOrDefault(character, EMPTY)
+                    : CONFUSABLE_DIGITS.getOrDefault(originalCharacter, EMPTY) + CONFUSABLE_DIGITS.getOrDefault(character, EMPTY);
+                for (int j = 0; j < confusableCharacters.length(); j++) {
+                    char confusableCharacter = confusableCharacters.charAt(j);
+                    if (confusableCharacter != character && confusableCharacters.indexOf(confusableCharacter) == j) {
+                        candidate.setCharAt(i, confusableCharacter);
+                        String candidateField = candidate.substring(0, checkDigitIndex);
+                        if (calculateMRZChecksumDigitChar(candidateField) == candidate.charAt(checkDigitIndex) && (field.type != MRZFormat.FieldType.DATE || isValidDate(candidateField))) {
+                            repairedField = candidate.toString();
+                            candidatesCount++;
                         }
-                    } else {
-                        mrzCodeBuilder.setCharAt(59, mrzCalculatedChecksum);
+                        candidate.setCharAt(i, character);
                     }
-                    mrzCode = mrzCodeBuilder.toString();
-                } else {
-                    throw new RuntimeException("Unrecognized mrz code type");
                 }
             }
-        } catch (Exception ex) {
-            if (mrzCodeText != null) {
-                getLogger().warn("MRZ code \"" + mrzCodeText.replaceAll("\n","" ) + "\" could not be processed: " + ex.getMessage());
+            if (candidatesCount != 1) {
+                Metrics.increment("mrz_checksum_repairs", "result", candidatesCount == 0 ? "failed" : "ambiguous");
+                throw new RuntimeException("Failed " + field.name + " checksum");
             }
+            Metrics.increment("mrz_checksum_repairs", "result", "repaired");
+            mrzLine.replace(field.start, field.end, repairedField.substring(0, checkDigitIndex));
+            mrzLine.setCharAt(field.checkDigitIndex, repairedField.charAt(checkDigitIndex));
         }
-        return mrzCode;
+    }
+
+    private static boolean readFillerTerminatedField(StringBuilder mrzLine, MRZFormat.Field field) {
+        // Lectura hasta el primer relleno con el digito verificador a continuación, solo si el resto del campo son rellenos
+        // (números de documento argentinos más cortos que el campo)
+        boolean fieldRead = false;
+        int fillerIndex = mrzLine.indexOf(String.valueOf(FILLER), field.start);
+        if (fillerIndex > field.start && fillerIndex < field.checkDigitIndex - 1) {
+            String digitsValue = readDigits(mrzLine.substring(field.start, fillerIndex));
+            String checkDigitValue = readDigits(mrzLine.substring(fillerIndex + 1, fillerIndex + 2));
+            boolean filled = true;
+            for (int i = fillerIndex + 2; i <= field.checkDigitIndex; i++) {
+                filled &= mrzLine.charAt(i) == FILLER;
+            }
+            if (filled && digitsValue != null && checkDigitValue != null && checkDigitValue.charAt(0) != FILLER && calculateMRZChecksumDigitChar(digitsValue) == checkDigitValue.charAt(0)) {
+                mrzLine.replace(field.start, fillerIndex, digitsValue);
+                mrzLine.setCharAt(fillerIndex + 1, checkDigitValue.charAt(0));
+                fieldRead = true;
+            }
+        }
+        return fieldRead;
+    }
+
+    private static String readDigits(String text) {
+        String digits = null;
+        try {
+            StringBuilder digitsBuilder = new StringBuilder();
+            for (int i = 0; i < text.length(); i++) {
+                char character = text.charAt(i);
+                digitsBuilder.append(character != FILLER ? readDigit(character) : character);
+            }
+            digits = digitsBuilder.toString();
+        } catch (RuntimeException ex) {}
+        return digits;
+    }
+
+    private static boolean isValidDate(String text) {
+        int month = Integer.parseInt(text.substring(2, 4));
+        int dayOfMonth = Integer.parseInt(text.substring(4, 6));
+        return month >= 1 && month <= 12 && dayOfMonth >= 1 && dayOfMonth <= 31;
     }
 
     private static char readLetter(char character) {
@@ -258,18 +643,12 @@ public class MRZUtils {
         return character;
     }
 
-    private static int calculateMRZChecksumDigit(String text) {
+    private static int calculateMRZChecksumDigit(CharSequence text) {
         int result = 0;
         for (int i = 0; i < text.length(); i++) {
             char character = text.charAt(i);
-            int characterValue;
-            if (character == FILLER) {
-                characterValue = 0;
-            } else if (character >= ZERO && character <= NINE) {
-                characterValue = character - ZERO;
-            } else if (character >= A && character <= Z) {
-                characterValue = character - A + 10;
-            } else {
+            int characterValue = character < MRZ_CHARACTER_VALUES.length ? MRZ_CHARACTER_VALUES[character] : -1;
+            if (characterValue < 0) {
                 throw new RuntimeException("Unrecognized character \"" + character + "\" in MRZ ");
             }
             result += characterValue * MRZ_WEIGHTS[i % MRZ_WEIGHTS.length];
@@ -277,12 +656,15 @@ public class MRZUtils {
         return result % 10;
     }
 
-    private static char calculateMRZChecksumDigitChar(String text) {
+    private static char calculateMRZChecksumDigitChar(CharSequence text) {
         return (char) (ZERO + calculateMRZChecksumDigit(text));
     }
 
-    private static int formatDocumentNumber(final String text) {
-        return Integer.parseInt(text.replaceAll("[^\\d.]", ""));
+    private static Object formatDocumentNumber(final String text) {
+        // El número de documento termina en el primer relleno, y los solo numéricos (como los de los documentos argentinos) se devuelven como enteros
+        int fillerIndex = text.indexOf(FILLER);
+        String documentNumber = fillerIndex >= 0 ? text.substring(0, fillerIndex) : text;
+        return documentNumber.length() <= 9 && documentNumber.chars().allMatch(Character::isDigit) ? (Object)Integer.parseInt(documentNumber) : documentNumber;
     }
 
     private static String formatName(final String text) {
@@ -316,75 +698,78 @@ public class MRZUtils {
         return calendar.getTimeInMillis();
     }
 
-    private static Mat detectCode(Mat src){
-        Mat img = new Mat();
-        OpenCVUtils.grayScale(src, img);
-        double ratio = img.height() / 800.0;
-        int width = (int) (img.size().width / ratio);
-        int height = (int) (img.size().height / ratio);
-        Size newSize = new Size(width, height);
-        Mat resizedImg = new Mat(newSize, CvType.CV_8UC4);
-        Imgproc.resize(img, resizedImg, newSize);
-        Mat blur = new Mat();
-        Imgproc.medianBlur(resizedImg, blur, 3);
-        Mat morph = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(13, 5));
-        Mat dilatedImg = new Mat();
-        Imgproc.morphologyEx(blur, dilatedImg, Imgproc.MORPH_BLACKHAT, morph);
-        blur.release();
-        Mat gradX = new Mat();
-        Imgproc.Sobel(dilatedImg, gradX, CV_32F, 1, 0);
-        dilatedImg.release();
-        Core.convertScaleAbs(gradX, gradX, 1, 0);
-        Core.MinMaxLocResult minMax = Core.minMaxLoc(gradX);
-        Core.convertScaleAbs(gradX, gradX, (255/(minMax.maxVal - minMax.minVal)), - ((minMax.minVal * 255) / (minMax.maxVal - minMax.minVal)));
-        Imgproc.morphologyEx(gradX, gradX, Imgproc.MORPH_CLOSE, morph);
-        Mat thresh = new Mat();
-        Imgproc.threshold(gradX, thresh, 0, 255, Imgproc.THRESH_OTSU);
-        gradX.release();
-        morph.release();
-        morph = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(21, 21));
-        Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, morph);
-        Imgproc.erode(thresh, thresh, new Mat(), new Point(-1, -1), 4);
-        morph.release();
-        int col = (int) resizedImg.size().width;
-        int p = (int) (resizedImg.size().width * 0.05);
-        int row = (int) resizedImg.size().height;
-        for(int i = 0; i < row; i++) {
-            for(int j = 0; j < p; j++) {
-                thresh.put(i, j, 0);
-                thresh.put(i, col-j, 0);
+    static Mat detectCode(Mat src){
+        try (MatScope scope = MatScope.open()) {
+            Mat img = MatScope.track(new Mat());
+            OpenCVUtils.grayScale(src, img);
+            double ratio = img.height() / 800.0;
+            int width = (int) (img.size().width / ratio);
+            int height = (int) (img.size().height / ratio);
+            Size newSize = new Size(width, height);
+            Mat resizedImg = MatScope.track(new Mat());
+            Imgproc.resize(img, resizedImg, newSize);
+            Mat blur = MatScope.track(new Mat());
+            Imgproc.medianBlur(resizedImg, blur, 3);
+            DetectionKernels kernels = DETECTION_KERNELS.get();
+            Mat dilatedImg = MatScope.track(new Mat());
+            Imgproc.morphologyEx(blur, dilatedImg, Imgproc.MORPH_BLACKHAT, kernels.text);
+            Mat gradX = MatScope.track(new Mat());
+            Imgproc.Sobel(dilatedImg, gradX, CV_32F, 1, 0);
+            Core.convertScaleAbs(gradX, gradX, 1, 0);
+            Core.MinMaxLocResult minMax = Core.minMaxLoc(gradX);
+            Core.convertScaleAbs(gradX, gradX, (255/(minMax.maxVal - minMax.minVal)), - ((minMax.minVal * 255) / (minMax.maxVal - minMax.minVal)));
+            Imgproc.morphologyEx(gradX, gradX, Imgproc.MORPH_CLOSE, kernels.text);
+            Mat thresh = MatScope.track(new Mat());
+            Imgproc.threshold(gradX, thresh, 0, 255, Imgproc.THRESH_OTSU);
+            Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, kernels.block);
+            Imgproc.erode(thresh, thresh, kernels.none, new Point(-1, -1), 4);
+
+            // Se descartan los margenes izquierdo y derecho (5% del ancho) rellenando cada franja completa
+            int cols = thresh.cols();
+            int margin = (int) (cols * BORDER_MARGIN_RATIO);
+            if (margin > 0) {
+                MatScope.track(thresh.colRange(0, margin)).setTo(BLACK);
+                MatScope.track(thresh.colRange(cols - margin, cols)).setTo(BLACK);
+            }
+            Mat dilated_edges = MatScope.track(new Mat());
+            Imgproc.dilate(thresh, dilated_edges, kernels.none, new Point(-1, -1), 16, 1, new Scalar(0,255,0));
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = MatScope.track(new Mat());
+            Imgproc.findContours(dilated_edges, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            MatScope.track(contours);
+            MatOfPoint contour = OpenCVUtils.getLargestContour(contours);
+
+            MatOfPoint2f contour2f = MatScope.track(new MatOfPoint2f(contour.toArray()));
+            RotatedRect rotatedRect = Imgproc.minAreaRect(contour2f);
+            Mat mrzMat = null;
+
+            double rectAspectRatioWidth = rotatedRect.size.width / rotatedRect.size.height;
+            double rectAspectRatioHeight = rotatedRect.size.height / rotatedRect.size.width;
+            double aspectRatio = Math.max(rectAspectRatioWidth, rectAspectRatioHeight);
+            if (aspectRatio > 3) {
+                double rectWidth = Math.max(rotatedRect.size.width, rotatedRect.size.height);
+                double rectHeight = Math.min(rotatedRect.size.width, rotatedRect.size.height);
+                Size holderSize = new Size(rectWidth, rectWidth);
+                Mat transformedImg = MatScope.track(new Mat());
+                OpenCVUtils.translate(resizedImg, transformedImg, (holderSize.width / 2) - rotatedRect.center.x, (holderSize.height / 2) - rotatedRect.center.y, holderSize);
+                OpenCVUtils.rotate(transformedImg, transformedImg, new Point(holderSize.width/2, holderSize.height/2), rotatedRect.size.width > rotatedRect.size.height ? rotatedRect.angle : 90 + rotatedRect.angle, holderSize);
+                mrzMat = MatScope.track(transformedImg.submat(new Rect(0,(int)((holderSize.height / 2) - (rectHeight / 2)), (int)rectWidth, (int)rectHeight)));
             }
-        }
-        Mat dilated_edges = new Mat();
-        Imgproc.dilate(thresh, dilated_edges, new Mat(), new Point(-1, -1), 16, 1, new Scalar(0,255,0));
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(dilated_edges, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-        hierarchy.release();
-        MatOfPoint contour = OpenCVUtils.getLargestContour(contours);
-
-        MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
-        RotatedRect rotatedRect = Imgproc.minAreaRect(contour2f);
-        Mat mrzMat = null;
-
-        double rectAspectRatioWidth = rotatedRect.size.width / rotatedRect.size.height;
-        double rectAspectRatioHeight = rotatedRect.size.height / rotatedRect.size.width;
-        double aspectRatio = Math.max(rectAspectRatioWidth, rectAspectRatioHeight);
-        if (aspectRatio > 3) {
-            double rectWidth = Math.max(rotatedRect.size.width, rotatedRect.size.height);
-            double rectHeight = Math.min(rotatedRect.size.width, rotatedRect.size.height);
-            Size holderSize = new Size(rectWidth, rectWidth);
-            Mat transformedImg = new Mat();
-            OpenCVUtils.translate(resizedImg, transformedImg, (holderSize.width / 2) - rotatedRect.center.x, (holderSize.height / 2) - rotatedRect.center.y, holderSize);
-            OpenCVUtils.rotate(transformedImg, transformedImg, new Point(holderSize.width/2, holderSize.height/2), rotatedRect.size.width > rotatedRect.size.height ? rotatedRect.angle : 90 + rotatedRect.angle, holderSize);
-            mrzMat = transformedImg.submat(new Rect(0,(int)((holderSize.height / 2) - (rectHeight / 2)), (int)rectWidth, (int)rectHeight));
-        }
 
-        if (mrzMat != null && !mrzMat.empty()) {
-            Imgproc.adaptiveThreshold(mrzMat, mrzMat, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 17, 5);
-            Imgproc.erode(mrzMat, mrzMat, new Mat(), new Point(-1, -1), 1);
-            Imgproc.dilate(mrzMat, mrzMat, new Mat(), new Point(-1, -1), 1);
+            if (mrzMat != null && !mrzMat.empty()) {
+                Imgproc.adaptiveThreshold(mrzMat, mrzMat, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 17, 5);
+                Imgproc.erode(mrzMat, mrzMat, kernels.none, new Point(-1, -1), 1);
+                Imgproc.dilate(mrzMat, mrzMat, kernels.none, new Point(-1, -1), 1);
+            }
+            return scope.detach(mrzMat);
         }
-        return mrzMat;
+    }
+
+    // Kernels de morfologia reutilizados por hilo entre detecciones (no se liberan, viven con el hilo)
+    private static final class DetectionKernels {
+
+        private final Mat text = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(13, 5));
+        private final Mat block = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(21, 21));
+        private final Mat none = new Mat();
     }
 }
@@ -0,0 +1,100 @@
+package com.biometrics.utils;
+
+import com.google.zxing.LuminanceSource;
+import org.opencv.core.Mat;
+
+// El scope de la conversión a grises libera la matriz registrada con MatScope.track sin referenciarse en el try
+@SuppressWarnings("try")
+final class MatLuminanceSource extends LuminanceSource {
+
+    private final byte[] luminances;
+    private final int dataWidth;
+    private final int left;
+    private final int top;
+
+    MatLuminanceSource(Mat image) {
+        this(getLuminances(image), image.cols(), 0, 0, image.cols(), image.rows());
+    }
+
+    private MatLuminanceSource(byte[] luminances, int dataWidth, int left, int top, int width, int height) {
+        super(width, height);
+        this.luminances = luminances;
+        this.dataWidth = dataWidth;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(luminances, (y + top) * dataWidth + left, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix;
+        if (left == 0 && top == 0 && width == dataWidth) {
+            // La fuente sin recortar tiene exactamente width * height pixels, por lo que el buffer se devuelve sin copiar
+            matrix = luminances;
+        } else {
+            matrix = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(luminances, (y + top) * dataWidth + left, matrix, y * width, width);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new MatLuminanceSource(luminances, dataWidth, this.left + left, this.top + top, width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] rotatedLuminances = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int offset = (y + top) * dataWidth + left;
+            for (int x = 0; x < width; x++) {
+                rotatedLuminances[(width - 1 - x) * height + y] = luminances[offset + x];
+            }
+        }
+        return new MatLuminanceSource(rotatedLuminances, height, 0, 0, height, width);
+    }
+
+    private static byte[] getLuminances(Mat image) {
+        try (MatScope scope = MatScope.open()) {
+            Mat grayImage = image;
+            if (image.channels() > 1) {
+                grayImage = MatScope.track(new Mat());
+                OpenCVUtils.grayScale(image, grayImage);
+            }
+
+            // Copia de los pixeles en un único acceso nativo
+            byte[] luminances = new byte[grayImage.rows() * grayImage.cols()];
+            grayImage.get(0, 0, luminances);
+            return luminances;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.biometrics.utils;
+
+import com.biometrics.Metrics;
+import org.opencv.core.Mat;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class MatScope implements AutoCloseable {
+
+    private static final ThreadLocal<MatScope> CURRENT_SCOPE = new ThreadLocal<>();
+    private static final AtomicLong LIVE_MATS = new AtomicLong();
+
+    static {
+        Metrics.registerGauge("opencv_mats_live", LIVE_MATS::get);
+    }
+
+    private final MatScope parent;
+    private final Deque<Mat> mats;
+    private volatile boolean closed;
+
+    private MatScope(MatScope parent) {
+        this.parent = parent;
+        this.mats = new ConcurrentLinkedDeque<>();
+    }
+
+    public static MatScope open() {
+        MatScope scope = new MatScope(CURRENT_SCOPE.get());
+        CURRENT_SCOPE.set(scope);
+        return scope;
+    }
+
+    public static <T extends Mat> T track(T mat) {
+        if (mat != null) {
+            MatScope scope = CURRENT_SCOPE.get();
+            if (scope != null) {
+                scope.add(mat);
+            } else {
+                Metrics.increment("opencv_mats_unscoped");
+            }
+        }
+        return mat;
+    }
+
+    public static <T extends Mat> List<T> track(List<T> mats) {
+        for (T mat : mats) {
+            track(mat);
+        }
+        return mats;
+    }
+
+    public static long getLiveMats() {
+        return LIVE_MATS.get();
+    }
+
+    public <T extends Mat> T detach(T mat) {
+        if (mat != null && mats.removeLastOccurrence(mat)) {
+            if (parent != null) {
+                parent.adopt(mat);
+            } else {
+                LIVE_MATS.decrementAndGet();
+                Metrics.increment("opencv_mats_unscoped");
+            }
+        }
+        return mat;
+    }
+
+    public <T extends Mat> List<T> detach(List<T> mats) {
+        for (T mat : mats) {
+            detach(mat);
+        }
+        return mats;
+    }
+
+    public <T> Callable<T> bind(Callable<T> task) {
+        return () -> {
+            MatScope previousScope = CURRENT_SCOPE.get();
+            CURRENT_SCOPE.set(this);
+            try {
+                return task.call();
+            } finally {
+                if (previousScope != null) {
+                    CURRENT_SCOPE.set(previousScope);
+                } else {
+                    CURRENT_SCOPE.remove();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            long releasedMats = 0;
+            Mat mat;
+            while ((mat = mats.pollLast()) != null) {
+                mat.release();
+                releasedMats++;
+            }
+            LIVE_MATS.addAndGet(-releasedMats);
+            Metrics.increment("opencv_mats_released", releasedMats);
+            if (CURRENT_SCOPE.get() == this) {
+                if (parent != null) {
+                    CURRENT_SCOPE.set(parent);
+                } else {
+                    CURRENT_SCOPE.remove();
+                }
+            }
+        }
+    }
+
+    private void add(Mat mat) {
+        Metrics.increment("opencv_mats_allocated");
+        LIVE_MATS.incrementAndGet();
+        adopt(mat);
+    }
+
+    private void adopt(Mat mat) {
+        if (closed) {
+            mat.release();
+            LIVE_MATS.decrementAndGet();
+            Metrics.increment("opencv_mats_released");
+        } else {
+            mats.add(mat);
+        }
+    }
+}
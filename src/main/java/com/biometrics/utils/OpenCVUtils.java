@@ -10,13 +10,17 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.opencv.core.CvType.*;
 
+// Los scopes de los métodos solo liberan al cerrarse las matrices registradas con MatScope.track, por lo que no se referencian en el try
+@SuppressWarnings("try")
 public final class OpenCVUtils {
 
     private static boolean initialized = false;
@@ -37,7 +41,52 @@ public final class OpenCVUtils {
     }
 
     public static Mat getImage(byte[] imageBytes, int flags) {
-        return Imgcodecs.imdecode(new MatOfByte(imageBytes), flags);
+        try (MatScope scope = MatScope.open()) {
+            MatOfByte bytesMat = MatScope.track(new MatOfByte(imageBytes));
+            return scope.detach(MatScope.track(Imgcodecs.imdecode(bytesMat, flags)));
+        }
+    }
+
+    public static Mat getScaledImage(byte[] imageBytes, int minSize) {
+        int flags = Imgcodecs.IMREAD_UNCHANGED;
+        Size imageSize = getImageSize(imageBytes);
+        if (imageSize != null && minSize > 0) {
+            int imageMinSize = (int)Math.min(imageSize.width, imageSize.height);
+            if (Math.ceil(imageMinSize / 8.0) >= minSize) {
+                flags = Imgcodecs.IMREAD_REDUCED_COLOR_8 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            } else if (Math.ceil(imageMinSize / 4.0) >= minSize) {
+                flags = Imgcodecs.IMREAD_REDUCED_COLOR_4 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            } else if (Math.ceil(imageMinSize / 2.0) >= minSize) {
+                flags = Imgcodecs.IMREAD_REDUCED_COLOR_2 | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+            }
+        }
+        return getImage(imageBytes, flags);
+    }
+
+    public static Size getImageSize(byte[] imageBytes) {
+        Size imageSize = null;
+        if (imageBytes.length > 4 && (imageBytes[0] & 0xFF) == 0xFF && (imageBytes[1] & 0xFF) == 0xD8) {
+            int offset = 2;
+            while (offset + 9 < imageBytes.length) {
+                if ((imageBytes[offset] & 0xFF) != 0xFF) {
+                    break;
+                }
+                int marker = imageBytes[offset + 1] & 0xFF;
+                if (marker == 0xFF) {
+                    offset++;
+                    continue;
+                }
+                int segmentLength = ((imageBytes[offset + 2] & 0xFF) << 8) | (imageBytes[offset + 3] & 0xFF);
+                if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    int height = ((imageBytes[offset + 5] & 0xFF) << 8) | (imageBytes[offset + 6] & 0xFF);
+                    int width = ((imageBytes[offset + 7] & 0xFF) << 8) | (imageBytes[offset + 8] & 0xFF);
+                    imageSize = new Size(width, height);
+                    break;
+                }
+                offset += 2 + segmentLength;
+            }
+        }
+        return imageSize;
     }
 
     public static void subImage(Mat image, Mat destinationImage, RotatedRect rect) {
@@ -49,7 +98,9 @@ public final class OpenCVUtils {
     }
 
     public static void subImage(Mat image, Mat destinationImage, Rect rect) {
-        destinationImage = image.submat(rect);
+        try (MatScope scope = MatScope.open()) {
+            MatScope.track(image.submat(rect)).copyTo(destinationImage);
+        }
     }
 
     public static byte[] getImageBytes(Mat image) {
@@ -57,9 +108,11 @@ public final class OpenCVUtils {
     }
 
     public static byte[] getImageBytes(Mat image, String extension) {
-        MatOfByte bytesMat = new MatOfByte();
-        Imgcodecs.imencode(extension, image, bytesMat);
-        return bytesMat.toArray();
+        try (MatScope scope = MatScope.open()) {
+            MatOfByte bytesMat = MatScope.track(new MatOfByte());
+            Imgcodecs.imencode(extension, image, bytesMat);
+            return bytesMat.toArray();
+        }
     }
 
     public static Scalar getScalarFromColor (Color color) {
@@ -68,33 +121,33 @@ public final class OpenCVUtils {
 
     public static BufferedImage getBufferedImage(Mat image) {
         BufferedImage bufferedImage = null;
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(getImageBytes(image))) {
-            bufferedImage = ImageIO.read(bais);
-        } catch(Exception ex) {}
+        if (image.depth() == CV_8U && (image.channels() == 1 || image.channels() == 3)) {
+            // Copia directa de los pixeles al raster de la imagen, sin pasar por un codec (BGR coincide con TYPE_3BYTE_BGR)
+            bufferedImage = new BufferedImage(image.cols(), image.rows(), image.channels() == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+            image.get(0, 0, ((DataBufferByte)bufferedImage.getRaster().getDataBuffer()).getData());
+        } else {
+            try (ByteArrayInputStream bais = new ByteArrayInputStream(getImageBytes(image))) {
+                bufferedImage = ImageIO.read(bais);
+            } catch(Exception ex) {}
+        }
         return bufferedImage;
     }
 
     public static MatOfRect detectFeatures(Mat image, CascadeClassifier classifier) {
-        MatOfRect features = new MatOfRect();
+        MatOfRect features = MatScope.track(new MatOfRect());
         classifier.detectMultiScale(image, features);
         return features;
     }
 
     public static Mat detectBiggestFeature(Mat image, CascadeClassifier classifier) {
-        MatOfRect features = detectFeatures(image, classifier);
-        Rect biggestFeature = null;
-        double biggestFeatureArea = 0.0;
-        for (Rect feature : features.toArray()) {
-            if (biggestFeature == null || feature.area() > biggestFeatureArea) {
-                biggestFeature = feature;
-                biggestFeatureArea = biggestFeature.area();
-            }
-        }
-        return biggestFeature != null ? image.submat(biggestFeature) : null;
+        Rect biggestFeature = detectBiggestFeatureRect(image, classifier);
+        return biggestFeature != null ? MatScope.track(image.submat(biggestFeature)) : null;
     }
 
     public static Rect[] detectFeatureRects(Mat image, CascadeClassifier classifier) {
-        return detectFeatures(image, classifier).toArray();
+        try (MatScope scope = MatScope.open()) {
+            return detectFeatures(image, classifier).toArray();
+        }
     }
 
     public static Rect detectBiggestFeatureRect(Mat image, CascadeClassifier classifier) {
@@ -110,6 +163,55 @@ public final class OpenCVUtils {
         return biggestFeature;
     }
 
+    public static Rect detectBiggestFeatureRect(Mat image, CascadeClassifier classifier, int detectionMaxSize, double scaleFactor, int minNeighbors, double minSizeRatio) {
+        int imageMaxSize = Math.max(image.cols(), image.rows());
+        if (detectionMaxSize <= 0 || imageMaxSize <= detectionMaxSize) {
+            // Sin reducción se mantiene el tamaño mínimo por defecto, igual que la detección original
+            return detectBiggestFeatureRect(image, classifier, scaleFactor, minNeighbors, new Size(), new Size());
+        }
+
+        try (MatScope scope = MatScope.open()) {
+            // Detección sobre una copia reducida de la imagen
+            double scale = detectionMaxSize / (double)imageMaxSize;
+            Mat scaledImage = MatScope.track(new Mat());
+            Imgproc.resize(image, scaledImage, new Size(Math.round(image.cols() * scale), Math.round(image.rows() * scale)), 0, 0, Imgproc.INTER_AREA);
+            double scaledMinSize = Math.min(image.cols(), image.rows()) * minSizeRatio * scale;
+            Rect scaledFeature = detectBiggestFeatureRect(scaledImage, classifier, scaleFactor, minNeighbors, new Size(scaledMinSize, scaledMinSize), new Size());
+            if (scaledFeature == null) {
+                return null;
+            }
+            Rect feature = new Rect((int)(scaledFeature.x / scale), (int)(scaledFeature.y / scale), (int)(scaledFeature.width / scale), (int)(scaledFeature.height / scale));
+
+            // Refinamiento de la detección sobre la región de la imagen original
+            int margin = (int)(Math.max(feature.width, feature.height) * 0.25);
+            int roiX = Math.max(0, feature.x - margin);
+            int roiY = Math.max(0, feature.y - margin);
+            Rect roi = new Rect(roiX, roiY, Math.min(image.cols(), feature.x + feature.width + margin) - roiX, Math.min(image.rows(), feature.y + feature.height + margin) - roiY);
+            Size refinementMinSize = new Size(feature.width * 0.7, feature.height * 0.7);
+            Rect refinedFeature = detectBiggestFeatureRect(MatScope.track(image.submat(roi)), classifier, scaleFactor, minNeighbors, refinementMinSize, new Size());
+            if (refinedFeature != null) {
+                feature = new Rect(roi.x + refinedFeature.x, roi.y + refinedFeature.y, refinedFeature.width, refinedFeature.height);
+            }
+            return feature;
+        }
+    }
+
+    private static Rect detectBiggestFeatureRect(Mat image, CascadeClassifier classifier, double scaleFactor, int minNeighbors, Size minSize, Size maxSize) {
+        try (MatScope scope = MatScope.open()) {
+            MatOfRect features = MatScope.track(new MatOfRect());
+            classifier.detectMultiScale(image, features, scaleFactor, minNeighbors, 0, minSize, maxSize);
+            Rect biggestFeature = null;
+            double biggestFeatureArea = 0.0;
+            for (Rect feature : features.toArray()) {
+                if (biggestFeature == null || feature.area() > biggestFeatureArea) {
+                    biggestFeature = feature;
+                    biggestFeatureArea = biggestFeature.area();
+                }
+            }
+            return biggestFeature;
+        }
+    }
+
     public static void drawRects(Mat image, Rect[] rects, Color color, int thickness) {
         for (Rect feature : rects) {
             drawRect(image, feature, color, thickness);
@@ -160,11 +262,13 @@ public final class OpenCVUtils {
     public static MatOfPoint getLargestContour(List<MatOfPoint> contours) {
         MatOfPoint largestContour = null;
         double largestContourPerimeter = 0;
-        for (MatOfPoint contour : contours) {
-            double contourPerimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-            if (largestContour == null || contourPerimeter > largestContourPerimeter) {
-                largestContour = contour;
-                largestContourPerimeter = contourPerimeter;
+        try (MatScope scope = MatScope.open()) {
+            for (MatOfPoint contour : contours) {
+                double contourPerimeter = Imgproc.arcLength(MatScope.track(new MatOfPoint2f(contour.toArray())), true);
+                if (largestContour == null || contourPerimeter > largestContourPerimeter) {
+                    largestContour = contour;
+                    largestContourPerimeter = contourPerimeter;
+                }
             }
         }
         return largestContour;
@@ -234,84 +338,88 @@ public final class OpenCVUtils {
     }
 
     public static void hanningWindow(Mat image, Mat destinationImage) {
-        int rows = image.rows();
-        int cols = image.cols();
-        Mat hanningWindow = new Mat();
-        Imgproc.createHanningWindow(hanningWindow, new Size(cols, rows), CV_64F);
-        int channels = image.channels();
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                double hanningWindowMultiplier = hanningWindow.get(row, col)[0];
-                double[] values = new double[channels];
-                for (int channel = 0; channel < channels; channel++) {
-                    values[channel] = hanningWindowMultiplier * image.get(row, col)[channel];
-                }
-                destinationImage.put(row, col, values);
-            }
+        try (MatScope scope = MatScope.open()) {
+            Mat floatImage = MatScope.track(new Mat());
+            image.convertTo(floatImage, CV_64F);
+            Core.multiply(floatImage, MatScope.track(createHanningWindow(image.rows(), image.cols(), image.channels())), floatImage);
+            floatImage.convertTo(destinationImage, image.type());
         }
     }
 
     public static void translate(Mat image, Mat destinationImage, double translationX, double translationY, Size destinationSize) {
-        Mat matrix = new Mat(2, 3, CV_64F);
-        matrix.put(0, 0, 1);
-        matrix.put(0, 1, 0);
-        matrix.put(0, 2, translationX);
-        matrix.put(1, 0, 0);
-        matrix.put(1, 1, 1);
-        matrix.put(1, 2, translationY);
-        Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT);
+        try (MatScope scope = MatScope.open()) {
+            Mat matrix = MatScope.track(new Mat(2, 3, CV_64F));
+            matrix.put(0, 0, 1);
+            matrix.put(0, 1, 0);
+            matrix.put(0, 2, translationX);
+            matrix.put(1, 0, 0);
+            matrix.put(1, 1, 1);
+            matrix.put(1, 2, translationY);
+            Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT);
+        }
     }
 
     public static void rotate (Mat image, Mat destinationImage, Point rotationAnchorPoint, double rotationAngle, Size destinationSize) {
-        Mat matrix = Imgproc.getRotationMatrix2D(rotationAnchorPoint, rotationAngle, 1.0);
-        Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_CUBIC, Core.BORDER_CONSTANT);
+        try (MatScope scope = MatScope.open()) {
+            Mat matrix = MatScope.track(Imgproc.getRotationMatrix2D(rotationAnchorPoint, rotationAngle, 1.0));
+            Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_CUBIC, Core.BORDER_CONSTANT);
+        }
     }
 
     public static void rotateAndTranslate(Mat image, Mat destinationImage, Point rotationAnchorPoint, double rotationAngle, double translationX, double translationY, Size destinationSize) {
-        Mat matrix = Imgproc.getRotationMatrix2D(rotationAnchorPoint, rotationAngle, 1.0);
-        matrix.put(0, 2, matrix.get(0,2)[0] + translationX);
-        matrix.put(1, 2, matrix.get(1,2)[0] + translationY);
-        Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_CUBIC, Core.BORDER_CONSTANT);
+        try (MatScope scope = MatScope.open()) {
+            Mat matrix = MatScope.track(Imgproc.getRotationMatrix2D(rotationAnchorPoint, rotationAngle, 1.0));
+            matrix.put(0, 2, matrix.get(0,2)[0] + translationX);
+            matrix.put(1, 2, matrix.get(1,2)[0] + translationY);
+            Imgproc.warpAffine(image, destinationImage, matrix, destinationSize, Imgproc.INTER_CUBIC, Core.BORDER_CONSTANT);
+        }
     }
 
     public static Mat getMagnitudeSpectrum(Mat image) {
-        List<Mat> planes = new ArrayList<>();
-        Mat complexImage = new Mat();
-        Mat padded = new Mat();
-        int addPixelRows = Core.getOptimalDFTSize(image.rows());
-        int addPixelCols = Core.getOptimalDFTSize(image.cols());
-        Core.copyMakeBorder(image, padded, 0, addPixelRows - image.rows(), 0, addPixelCols - image.cols(), Core.BORDER_CONSTANT, Scalar.all(0));
-        padded.convertTo(padded, CvType.CV_32F);
-        planes.add(padded);
-        planes.add(Mat.zeros(padded.size(), CvType.CV_32F));
-        Core.merge(planes, complexImage);
-        Core.dft(complexImage, complexImage);
-
-        List<Mat> newPlanes = new ArrayList<>();
-        Mat mag = new Mat();
-        Core.split(complexImage, newPlanes);
-        Core.magnitude(newPlanes.get(0), newPlanes.get(1), mag);
-        Core.add(Mat.ones(mag.size(), CvType.CV_32F), mag, mag);
-        Core.log(mag, mag);
-
-        mag = mag.submat(new Rect(0, 0, mag.cols() & -2, mag.rows() & -2));
-        int cx = mag.cols() / 2;
-        int cy = mag.rows() / 2;
-        Mat q0 = new Mat(mag, new Rect(0, 0, cx, cy));
-        Mat q1 = new Mat(mag, new Rect(cx, 0, cx, cy));
-        Mat q2 = new Mat(mag, new Rect(0, cy, cx, cy));
-        Mat q3 = new Mat(mag, new Rect(cx, cy, cx, cy));
-        Mat tmp = new Mat();
-        q0.copyTo(tmp);
-        q3.copyTo(q0);
-        tmp.copyTo(q3);
-        q1.copyTo(tmp);
-        q2.copyTo(q1);
-        tmp.copyTo(q2);
-
-        mag.convertTo(mag, CvType.CV_8UC1);
-        Core.normalize(mag, mag, 0, 255, Core.NORM_MINMAX, CvType.CV_8UC1);
-        return mag;
+        int rows = image.rows();
+        int cols = image.cols();
+        int paddedRows = Core.getOptimalDFTSize(rows);
+        int paddedCols = Core.getOptimalDFTSize(cols);
+
+        // Los buffers intermedios se crean en cada llamada y se liberan al cerrar el scope, ya que su tamaño depende del
+        // recorte del rostro y conservarlos por hilo retendría memoria nativa del mayor recorte procesado
+        try (MatScope scope = MatScope.open()) {
+
+            // Conversión a float sobre el buffer con relleno, limpiando solo las franjas de relleno
+            Mat padded = MatScope.track(new Mat(paddedRows, paddedCols, CV_32F));
+            image.convertTo(MatScope.track(padded.submat(0, rows, 0, cols)), CV_32F);
+            if (paddedCols > cols) {
+                MatScope.track(padded.submat(0, rows, cols, paddedCols)).setTo(Scalar.all(0));
+            }
+            if (paddedRows > rows) {
+                MatScope.track(padded.submat(rows, paddedRows, 0, paddedCols)).setTo(Scalar.all(0));
+            }
+
+            // Transformada de una entrada real con salida compleja completa y logaritmo de la magnitud en el mismo buffer
+            Mat complex = MatScope.track(new Mat());
+            Mat real = MatScope.track(new Mat());
+            Mat imaginary = MatScope.track(new Mat());
+            Mat mag = MatScope.track(new Mat());
+            Core.dft(padded, complex, Core.DFT_COMPLEX_OUTPUT);
+            Core.extractChannel(complex, real, 0);
+            Core.extractChannel(complex, imaginary, 1);
+            Core.magnitude(real, imaginary, mag);
+            Core.add(mag, Scalar.all(1), mag);
+            Core.log(mag, mag);
+
+            // Los cuadrantes se escriben directamente en su posición centrada al convertir a 8 bits
+            int spectrumRows = paddedRows & -2;
+            int spectrumCols = paddedCols & -2;
+            int cx = spectrumCols / 2;
+            int cy = spectrumRows / 2;
+            Mat spectrum = MatScope.track(new Mat(spectrumRows, spectrumCols, CV_8U));
+            MatScope.track(mag.submat(0, cy, 0, cx)).convertTo(MatScope.track(spectrum.submat(cy, spectrumRows, cx, spectrumCols)), CV_8U);
+            MatScope.track(mag.submat(0, cy, cx, spectrumCols)).convertTo(MatScope.track(spectrum.submat(cy, spectrumRows, 0, cx)), CV_8U);
+            MatScope.track(mag.submat(cy, spectrumRows, 0, cx)).convertTo(MatScope.track(spectrum.submat(0, cy, cx, spectrumCols)), CV_8U);
+            MatScope.track(mag.submat(cy, spectrumRows, cx, spectrumCols)).convertTo(MatScope.track(spectrum.submat(0, cy, 0, cx)), CV_8U);
+            Core.normalize(spectrum, spectrum, 0, 255, Core.NORM_MINMAX, CV_8U);
+            return scope.detach(spectrum);
+        }
     }
 
     public static double[] getHistogram(Mat image) {
@@ -320,10 +428,12 @@ public final class OpenCVUtils {
 
     public static double[] getHistogram(Mat image, int channel, int histSize) {
         double[] histogramValues = new double[histSize];
-        Mat histogram = new Mat();
-        Imgproc.calcHist(Arrays.asList(image), new MatOfInt(channel), new Mat(), histogram, new MatOfInt(histSize), new MatOfFloat(0, histSize - 1), false);
-        for (int i = 0; i < histSize; i++) {
-            histogramValues[i] = histogram.get(i, 0)[0];
+        try (MatScope scope = MatScope.open()) {
+            Mat histogram = MatScope.track(new Mat());
+            Imgproc.calcHist(Arrays.asList(image), MatScope.track(new MatOfInt(channel)), MatScope.track(new Mat()), histogram, MatScope.track(new MatOfInt(histSize)), MatScope.track(new MatOfFloat(0, histSize - 1)), false);
+            for (int i = 0; i < histSize; i++) {
+                histogramValues[i] = histogram.get(i, 0)[0];
+            }
         }
         return histogramValues;
     }
@@ -337,37 +447,43 @@ public final class OpenCVUtils {
     }
 
     public static void displayHistogram (double[] histogramValues, String label, int histWidth, int histHeight, Color color) {
-        Scalar scalar = getScalarFromColor(color);
-        Mat histogramImage = Mat.zeros(histHeight, histWidth, CV_8UC3);
-        double maxValue = 0;
-        int histSize = histogramValues.length;
-        for (int i = 0; i < histSize; i++) {
-            if (histogramValues[i] > maxValue) {
-                maxValue = histogramValues[i];
+        try (MatScope scope = MatScope.open()) {
+            Scalar scalar = getScalarFromColor(color);
+            Mat histogramImage = MatScope.track(Mat.zeros(histHeight, histWidth, CV_8UC3));
+            double maxValue = 0;
+            int histSize = histogramValues.length;
+            for (int i = 0; i < histSize; i++) {
+                if (histogramValues[i] > maxValue) {
+                    maxValue = histogramValues[i];
+                }
             }
+            for (int i = 0; i < histSize; i++) {
+                double value = histogramValues[i] * histHeight / maxValue;
+                Point point1 = new Point(i * (double)histWidth / (double)histSize, histHeight - 1);
+                Point point2 = new Point(((i + 1) * (double)histWidth / (double)histSize) - 1, histHeight - value);
+                Imgproc.rectangle(histogramImage, point1, point2, scalar, Imgproc.FILLED);
+            }
+            display(histogramImage, label);
         }
-        for (int i = 0; i < histSize; i++) {
-            double value = histogramValues[i] * histHeight / maxValue;
-            Point point1 = new Point(i * (double)histWidth / (double)histSize, histHeight - 1);
-            Point point2 = new Point(((i + 1) * (double)histWidth / (double)histSize) - 1, histHeight - value);
-            Imgproc.rectangle(histogramImage, point1, point2, scalar, Imgproc.FILLED);
-        }
-        display(histogramImage, label);
     }
 
     public static double getBlurriness(Mat image) {
-        Mat laplacian = new Mat();
-        Imgproc.Laplacian(image, laplacian, CV_64F);
-        MatOfDouble mu = new MatOfDouble();
-        MatOfDouble sigma = new MatOfDouble();
-        Core.meanStdDev(laplacian, mu, sigma);
-        return Math.pow(sigma.get(0,0)[0], 2);
+        try (MatScope scope = MatScope.open()) {
+            Mat laplacian = MatScope.track(new Mat());
+            Imgproc.Laplacian(image, laplacian, CV_64F);
+            MatOfDouble mu = MatScope.track(new MatOfDouble());
+            MatOfDouble sigma = MatScope.track(new MatOfDouble());
+            Core.meanStdDev(laplacian, mu, sigma);
+            return Math.pow(sigma.get(0,0)[0], 2);
+        }
     }
 
     public static double getBrightness(Mat image) {
-        Mat hsvImage = new Mat();
-        Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
-        return Core.mean(hsvImage).val[2];
+        try (MatScope scope = MatScope.open()) {
+            Mat hsvImage = MatScope.track(new Mat());
+            Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
+            return Core.mean(hsvImage).val[2];
+        }
     }
 
     public static CascadeClassifier getClassfierFromResource(String resourceName) {
@@ -376,7 +492,7 @@ public final class OpenCVUtils {
         OutputStream outputStream = null;
         File cascadeFile = null;
         try {
-            cascadeFile = new File("cascade_file.xml");
+            cascadeFile = File.createTempFile("cascade_file", ".xml");
             inputStream = OpenCVUtils.class.getClassLoader().getResourceAsStream(resourceName);
             outputStream = new FileOutputStream(cascadeFile);
             byte[] buffer = new byte[4096];
@@ -396,4 +512,14 @@ public final class OpenCVUtils {
         }
         return classifier;
     }
+
+    private static Mat createHanningWindow(int rows, int cols, int channels) {
+        Mat window = new Mat();
+        try (MatScope scope = MatScope.open()) {
+            Mat channelWindow = MatScope.track(new Mat());
+            Imgproc.createHanningWindow(channelWindow, new Size(cols, rows), CV_64F);
+            Core.merge(Collections.nCopies(channels, channelWindow), window);
+        }
+        return window;
+    }
 }
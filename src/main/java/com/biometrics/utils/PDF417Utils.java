@@ -1,17 +1,23 @@
 package com.biometrics.utils;
 
+import com.biometrics.Configuration;
+import com.biometrics.Metrics;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.LuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
 import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.pdf417.PDF417Reader;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
-import java.awt.image.BufferedImage;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static org.neogroup.warp.Warp.getLogger;
@@ -20,6 +26,16 @@ import static org.opencv.core.CvType.CV_64F;
 public class PDF417Utils {
 
     private static final PDF417Reader pdf417Reader;
+    private static final ScanResultCache resultCache = new ScanResultCache("pdf417_result");
+    private static final String STAGE_TIMER_NAME = "pdf417_stage";
+    private static final String STAGE_LABEL_NAME = "stage";
+    private static final String DECODE_THREADS_PROPERTY_NAME = "pdf417_decode_threads";
+    private static final ExecutorService DECODE_EXECUTOR = ExecutorUtils.createBoundedExecutor("pdf417_decode", Configuration.getInt(DECODE_THREADS_PROPERTY_NAME, Runtime.getRuntime().availableProcessors()), 64);
+
+    static final int IMAGE_MIN_SIZE = 1000;
+    private static final double CANDIDATE_MIN_ASPECT_RATIO = 2.5;
+    private static final double CANDIDATE_MAX_ASPECT_RATIO = 5;
+    private static final double CANDIDATE_ASPECT_RATIO = (CANDIDATE_MIN_ASPECT_RATIO + CANDIDATE_MAX_ASPECT_RATIO) / 2;
     private static final TimeZone GMT_TIME_ZONE = TimeZone.getTimeZone("GMT");
     private static final String NAME_PATTERN = "(?:[a-zA-Z]|\\s|`)+";
     private static final String NUMBER_PATTERN = "\\d+";
@@ -34,21 +50,81 @@ public class PDF417Utils {
         pdf417Reader = new PDF417Reader();
     }
 
-    public static String readCode(byte[] imageBytes) {
+    public static String readCode(byte[]... imagesBytes) {
+        return resultCache.get(() -> scanCode(imagesBytes), imagesBytes);
+    }
+
+    static String scanCode(byte[]... imagesBytes) {
         String pdf417Code = null;
-        if (imageBytes.length > 0) {
-            Mat image = OpenCVUtils.getImage(imageBytes);
-            List<Mat> barcodeImages = detectCode(image);
-            for (Mat barcodeImage : barcodeImages) {
-                pdf417Code = readCode(OpenCVUtils.getBufferedImage(barcodeImage));
-                if (pdf417Code != null) {
-                    break;
+        if (imagesBytes.length > 0) {
+            try (MatScope scope = MatScope.open()) {
+                // Detección de candidatos en todas las imagenes en paralelo
+                List<BarcodeCandidate> candidates = new ArrayList<>();
+                List<Future<List<BarcodeCandidate>>> detectionFutures = new ArrayList<>();
+                try {
+                    for (int i = 1; i < imagesBytes.length; i++) {
+                        byte[] imageBytes = imagesBytes[i];
+                        detectionFutures.add(DECODE_EXECUTOR.submit(scope.bind(() -> detectCandidates(imageBytes))));
+                    }
+                    candidates.addAll(detectCandidates(imagesBytes[0]));
+                    for (Future<List<BarcodeCandidate>> detectionFuture : detectionFutures) {
+                        candidates.addAll(ExecutorUtils.getResult(detectionFuture));
+                    }
+                } catch (RuntimeException ex) {
+                    detectionFutures.forEach(ExecutorUtils::awaitQuietly);
+                    throw ex;
+                }
+
+                // Decodificación de los candidatos en paralelo, empezando por los de mejor puntaje
+                candidates.sort(Comparator.comparingDouble(candidate -> -candidate.score));
+                pdf417Code = decodeCandidates(scope, candidates);
+            }
+        }
+        return pdf417Code;
+    }
+
+    private static List<BarcodeCandidate> detectCandidates(byte[] imageBytes) {
+        List<BarcodeCandidate> candidates = Collections.emptyList();
+        if (imageBytes != null && imageBytes.length > 0) {
+            try (MatScope scope = MatScope.open()) {
+                Mat image = timeStage("decode", () -> OpenCVUtils.getScaledImage(imageBytes, IMAGE_MIN_SIZE));
+                candidates = timeStage("detection", () -> detectCandidates(image));
+                for (BarcodeCandidate candidate : candidates) {
+                    scope.detach(candidate.image);
                 }
             }
         }
+        return candidates;
+    }
+
+    private static String decodeCandidates(MatScope scope, List<BarcodeCandidate> candidates) {
+        String pdf417Code = null;
+        AtomicBoolean decoded = new AtomicBoolean();
+        CompletionService<String> completionService = new ExecutorCompletionService<>(DECODE_EXECUTOR);
+        List<Future<String>> decodeFutures = new ArrayList<>();
+        try {
+            for (BarcodeCandidate candidate : candidates) {
+                decodeFutures.add(completionService.submit(scope.bind(() -> decoded.get() ? null : decodeCandidate(candidate.image))));
+            }
+            for (int i = 0; i < decodeFutures.size() && pdf417Code == null; i++) {
+                pdf417Code = ExecutorUtils.getResult(ExecutorUtils.takeResult(completionService));
+            }
+        } finally {
+            // Cancelación de los candidatos pendientes, esperando a los que están en curso antes de liberar sus imagenes
+            decoded.set(true);
+            for (Future<String> decodeFuture : decodeFutures) {
+                decodeFuture.cancel(false);
+            }
+            decodeFutures.forEach(ExecutorUtils::awaitQuietly);
+        }
         return pdf417Code;
     }
 
+    private static String decodeCandidate(Mat candidateImage) {
+        String pdf417Code = timeStage("barcode_decode", () -> readCode(candidateImage));
+        return pdf417Code != null && parseCode(pdf417Code) != null ? pdf417Code : null;
+    }
+
     public static Map<String, Object> parseCode(String pdf417code) {
         Map<String, Object> documentData = null;
         pdf417code = pdf417code.trim();
@@ -80,10 +156,10 @@ public class PDF417Utils {
         return documentData;
     }
 
-    private static String readCode(BufferedImage image) {
+    static String readCode(Mat image) {
         String pdf417Code = null;
         try {
-            LuminanceSource source = new BufferedImageLuminanceSource(image);
+            LuminanceSource source = new MatLuminanceSource(image);
             BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
             Result result = pdf417Reader.decode(bitmap, new EnumMap<>(DecodeHintType.class));
             if (result != null) {
@@ -96,6 +172,10 @@ public class PDF417Utils {
         return pdf417Code;
     }
 
+    private static <T> T timeStage(String stage, Supplier<T> task) {
+        return Metrics.time(STAGE_TIMER_NAME, task, STAGE_LABEL_NAME, stage);
+    }
+
     private static int formatDocumentNumber(final String text) {
         return Integer.parseInt(text.replaceAll("[^\\d.]", ""));
     }
@@ -127,44 +207,73 @@ public class PDF417Utils {
         return calendar.getTimeInMillis();
     }
 
-    private static List<Mat> detectCode(Mat src){
+    static List<Mat> detectCode(Mat src) {
         List<Mat> barcodeImageCandidates = new ArrayList<>();
-        Mat image = new Mat();
-        OpenCVUtils.grayScale(src, image);
-        OpenCVUtils.resize(image, image,800, 800, 0, 0);
-        Imgproc.GaussianBlur(image, image, new Size(13, 13), 0);
-        Imgproc.threshold(image, image, 90, 255, Imgproc.THRESH_BINARY_INV);
-        Imgproc.dilate(image, image, new Mat(), new Point(-1, -1), 14);
-        Imgproc.erode(image, image, new Mat(), new Point(-1, -1), 9);
-        List<MatOfPoint> contours = new ArrayList<>();
-        List<RotatedRect> rotatedRects = new ArrayList<>();
-        Imgproc.findContours(image, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-        for (MatOfPoint contour : contours) {
-            MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
-            RotatedRect rect = Imgproc.minAreaRect(contour2f);
-            double rectAspectRatioWidth = rect.size.width / rect.size.height;
-            double rectAspectRatioHeight = rect.size.height / rect.size.width;
-            double aspectRatio = Math.max(rectAspectRatioWidth, rectAspectRatioHeight);
-            if (aspectRatio > 2.5 && aspectRatio <= 5) {
-                rotatedRects.add(rect);
-            }
+        for (BarcodeCandidate candidate : detectCandidates(src)) {
+            barcodeImageCandidates.add(candidate.image);
         }
+        return barcodeImageCandidates;
+    }
 
-        if (!rotatedRects.isEmpty()) {
-            Mat transformedImg = new Mat();
-            Size originalImageSize = src.size();
-            Size imageSize = image.size();
-            double xMultiplier = originalImageSize.width / imageSize.width;
-            double yMultiplier = originalImageSize.height / imageSize.height;
-            for (RotatedRect rect : rotatedRects) {
-                double rectWidth = Math.max(rect.size.width, rect.size.height) * xMultiplier * 1.2;
-                double rectHeight = Math.min(rect.size.width, rect.size.height) * yMultiplier * 1.1;
-                Size holderSize = new Size(rectWidth, rectWidth);
-                OpenCVUtils.translate(src, transformedImg, (holderSize.width / 2) - rect.center.x * xMultiplier, (holderSize.height / 2) - rect.center.y * yMultiplier, holderSize);
-                OpenCVUtils.rotate(transformedImg, transformedImg, new Point(holderSize.width/2, holderSize.height/2), rect.size.width > rect.size.height ? 180 + rect.angle : 90 + rect.angle, holderSize);
-                barcodeImageCandidates.add(transformedImg.submat(new Rect(0,(int)((holderSize.height / 2) - (rectHeight / 2)), (int)rectWidth, (int)rectHeight)));
+    private static List<BarcodeCandidate> detectCandidates(Mat src) {
+        List<BarcodeCandidate> barcodeCandidates = new ArrayList<>();
+        try (MatScope scope = MatScope.open()) {
+            Mat image = MatScope.track(new Mat());
+            OpenCVUtils.grayScale(src, image);
+            OpenCVUtils.resize(image, image,800, 800, 0, 0);
+            Imgproc.GaussianBlur(image, image, new Size(13, 13), 0);
+            Imgproc.threshold(image, image, 90, 255, Imgproc.THRESH_BINARY_INV);
+            Mat defaultKernel = MatScope.track(new Mat());
+            Imgproc.dilate(image, image, defaultKernel, new Point(-1, -1), 14);
+            Imgproc.erode(image, image, defaultKernel, new Point(-1, -1), 9);
+            List<MatOfPoint> contours = new ArrayList<>();
+            List<RotatedRect> rotatedRects = new ArrayList<>();
+            List<Double> rotatedRectScores = new ArrayList<>();
+            Imgproc.findContours(image, contours, MatScope.track(new Mat()), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            MatScope.track(contours);
+            double imageArea = image.size().area();
+            for (MatOfPoint contour : contours) {
+                MatOfPoint2f contour2f = MatScope.track(new MatOfPoint2f(contour.toArray()));
+                RotatedRect rect = Imgproc.minAreaRect(contour2f);
+                double rectAspectRatioWidth = rect.size.width / rect.size.height;
+                double rectAspectRatioHeight = rect.size.height / rect.size.width;
+                double aspectRatio = Math.max(rectAspectRatioWidth, rectAspectRatioHeight);
+                if (aspectRatio > CANDIDATE_MIN_ASPECT_RATIO && aspectRatio <= CANDIDATE_MAX_ASPECT_RATIO) {
+                    // Puntaje del candidato según su área relativa y la cercanía a la proporción típica de un código
+                    rotatedRects.add(rect);
+                    rotatedRectScores.add((rect.size.area() / imageArea) / (1 + Math.abs(aspectRatio - CANDIDATE_ASPECT_RATIO)));
+                }
             }
+
+            if (!rotatedRects.isEmpty()) {
+                Size originalImageSize = src.size();
+                Size imageSize = image.size();
+                double xMultiplier = originalImageSize.width / imageSize.width;
+                double yMultiplier = originalImageSize.height / imageSize.height;
+                for (int i = 0; i < rotatedRects.size(); i++) {
+                    RotatedRect rect = rotatedRects.get(i);
+                    double rectWidth = Math.max(rect.size.width, rect.size.height) * xMultiplier * 1.2;
+                    double rectHeight = Math.min(rect.size.width, rect.size.height) * yMultiplier * 1.1;
+                    Size holderSize = new Size(rectWidth, rectWidth);
+                    Mat transformedImg = MatScope.track(new Mat());
+                    OpenCVUtils.translate(src, transformedImg, (holderSize.width / 2) - rect.center.x * xMultiplier, (holderSize.height / 2) - rect.center.y * yMultiplier, holderSize);
+                    OpenCVUtils.rotate(transformedImg, transformedImg, new Point(holderSize.width/2, holderSize.height/2), rect.size.width > rect.size.height ? 180 + rect.angle : 90 + rect.angle, holderSize);
+                    Mat barcodeImage = MatScope.track(transformedImg.submat(new Rect(0,(int)((holderSize.height / 2) - (rectHeight / 2)), (int)rectWidth, (int)rectHeight)));
+                    barcodeCandidates.add(new BarcodeCandidate(scope.detach(barcodeImage), rotatedRectScores.get(i)));
+                }
+            }
+            return barcodeCandidates;
+        }
+    }
+
+    private static final class BarcodeCandidate {
+
+        private final Mat image;
+        private final double score;
+
+        private BarcodeCandidate(Mat image, double score) {
+            this.image = image;
+            this.score = score;
         }
-        return barcodeImageCandidates;
     }
 }
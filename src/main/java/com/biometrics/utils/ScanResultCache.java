@@ -0,0 +1,131 @@
+package com.biometrics.utils;
+
+import com.biometrics.Configuration;
+import com.biometrics.Metrics;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+public class ScanResultCache {
+
+    private static final String MAX_ENTRIES_PROPERTY_NAME = "scan_result_cache_max_entries";
+    private static final String TTL_PROPERTY_NAME = "scan_result_cache_ttl";
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public ScanResultCache(String name) {
+        this(name, Configuration.getInt(MAX_ENTRIES_PROPERTY_NAME, 1000), Configuration.getLong(TTL_PROPERTY_NAME, 300000));
+    }
+
+    public ScanResultCache(String name, int maxEntries, long ttl) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<>();
+        Metrics.registerGauge(name + "_cache_entries", this::getEntriesCount);
+    }
+
+    public String get(Supplier<String> loader, byte[]... contents) {
+        if (maxEntries <= 0 || ttl <= 0) {
+            return loader.get();
+        }
+
+        // Los resultados (incluso los nulos) se comparten entre las subidas de un mismo contenido,
+        // y las que llegan mientras el primero se procesa esperan ese mismo resultado
+        String key = getContentHash(contents);
+        CompletableFuture<String> result;
+        boolean loadResult = false;
+        synchronized (this) {
+            long currentTime = System.currentTimeMillis();
+            purge(currentTime);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                result = entry.result;
+            } else {
+                result = new CompletableFuture<>();
+                entries.put(key, new Entry(result, currentTime + ttl));
+                loadResult = true;
+                evict();
+            }
+        }
+        if (loadResult) {
+            Metrics.increment(name + "_cache_misses");
+            try {
+                result.complete(loader.get());
+            } catch (RuntimeException | Error ex) {
+                // Los errores no se cachean
+                synchronized (this) {
+                    Entry entry = entries.get(key);
+                    if (entry != null && entry.result == result) {
+                        entries.remove(key);
+                    }
+                }
+                result.completeExceptionally(ex);
+                throw ex;
+            }
+        } else {
+            Metrics.increment(name + "_cache_hits");
+        }
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException)ex.getCause() : ex;
+        }
+    }
+
+    public synchronized int getEntriesCount() {
+        return entries.size();
+    }
+
+    private void purge(long currentTime) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expirationTime <= currentTime) {
+            iterator.remove();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            Metrics.increment(name + "_cache_evictions");
+        }
+    }
+
+    private static String getContentHash(byte[]... contents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] content : contents) {
+                int contentLength = content != null ? content.length : -1;
+                digest.update(new byte[] {(byte)(contentLength >>> 24), (byte)(contentLength >>> 16), (byte)(contentLength >>> 8), (byte)contentLength});
+                if (content != null) {
+                    digest.update(content);
+                }
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<String> result;
+        private final long expirationTime;
+
+        private Entry(CompletableFuture<String> result, long expirationTime) {
+            this.result = result;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.biometrics.utils;
+
+import com.biometrics.Metrics;
+import com.biometrics.exceptions.ResponseException;
+import net.sourceforge.tess4j.Tesseract;
+import org.neogroup.warp.http.StatusCode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public final class TesseractPool {
+
+    private final String name;
+    private final int size;
+    private final long timeout;
+    private final BlockingQueue<Tesseract> engines;
+
+    public TesseractPool(String name, int size, long timeout, Supplier<Tesseract> engineFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Tesseract pool size must be greater than 0");
+        }
+        this.name = name;
+        this.size = size;
+        this.timeout = timeout;
+        this.engines = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            engines.add(engineFactory.get());
+        }
+        Metrics.registerGauge(name + "_pool_size", () -> this.size);
+        Metrics.registerGauge(name + "_pool_active", this::getActiveEngines);
+        Metrics.registerGauge(name + "_pool_utilization", () -> getActiveEngines() / (double)this.size);
+    }
+
+    public Tesseract borrowEngine() {
+        long startTime = System.nanoTime();
+        Tesseract engine;
+        try {
+            engine = engines.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            engine = null;
+        }
+        Metrics.recordTime(name + "_pool_wait", System.nanoTime() - startTime);
+        if (engine == null) {
+            Metrics.increment(name + "_pool_timeouts");
+            throw new ResponseException("No OCR engine available, try again later", StatusCode.SERVICE_UNAVAILABLE);
+        }
+        return engine;
+    }
+
+    public void releaseEngine(Tesseract engine) {
+        engines.offer(engine);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getActiveEngines() {
+        return size - engines.size();
+    }
+}
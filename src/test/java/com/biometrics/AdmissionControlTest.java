@@ -0,0 +1,118 @@
+package com.biometrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testTokenBucketBurst() {
+        AdmissionControl.TokenBucket bucket = new AdmissionControl.TokenBucket(1, 3);
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+
+        // Sin tokens, la espera es el tiempo de reponer uno a razón de 1 por segundo
+        long waitNanos = bucket.tryConsume();
+        assertTrue(waitNanos > 900_000_000L && waitNanos <= 1_000_000_000L);
+        assertEquals(1, AdmissionControl.getRetryAfter(waitNanos));
+    }
+
+    @Test
+    public void testTokenBucketRefill() throws InterruptedException {
+        AdmissionControl.TokenBucket bucket = new AdmissionControl.TokenBucket(50, 1);
+        assertEquals(0, bucket.tryConsume());
+        long waitNanos = bucket.tryConsume();
+        assertTrue(waitNanos > 0 && waitNanos <= 20_000_000L);
+
+        // Luego de esperar el tiempo indicado hay un nuevo token, pero nunca más que la capacidad
+        Thread.sleep(100);
+        assertEquals(0, bucket.tryConsume());
+        assertTrue(bucket.tryConsume() > 0);
+    }
+
+    @Test
+    public void testTokenBucketRefund() {
+        AdmissionControl.TokenBucket bucket = new AdmissionControl.TokenBucket(1, 1);
+        assertEquals(0, bucket.tryConsume());
+        assertTrue(bucket.tryConsume() > 0);
+
+        // El token devuelto vuelve a estar disponible, pero nunca por encima de la capacidad
+        bucket.refund();
+        bucket.refund();
+        assertEquals(0, bucket.tryConsume());
+        assertTrue(bucket.tryConsume() > 0);
+    }
+
+    @Test
+    public void testRetryAfter() {
+        assertEquals(1, AdmissionControl.getRetryAfter(1));
+        assertEquals(1, AdmissionControl.getRetryAfter(1_000_000_000L));
+        assertEquals(2, AdmissionControl.getRetryAfter(1_000_000_001L));
+        assertEquals(3, AdmissionControl.getRetryAfter(2_500_000_000L));
+    }
+
+    @Test
+    public void testEndpointQueueFull() {
+        AdmissionControl.EndpointLimit endpointLimit = new AdmissionControl.EndpointLimit("test_queue_full", 1, 0);
+        assertNull(endpointLimit.acquire(1000));
+
+        // Sin lugar en la cola el rechazo es inmediato, sin esperar el timeout
+        long startTime = System.nanoTime();
+        assertEquals("queue_full", endpointLimit.acquire(1000));
+        assertTrue(System.nanoTime() - startTime < 500_000_000L);
+        assertEquals(1.0, Metrics.getSnapshot().get("admission_in_flight{endpoint=\"test_queue_full\"}"));
+        assertEquals(0.0, Metrics.getSnapshot().get("admission_queued{endpoint=\"test_queue_full\"}"));
+
+        endpointLimit.release();
+        assertNull(endpointLimit.acquire(1000));
+        endpointLimit.release();
+        assertEquals(0.0, Metrics.getSnapshot().get("admission_in_flight{endpoint=\"test_queue_full\"}"));
+    }
+
+    @Test
+    public void testEndpointQueueTimeout() throws InterruptedException {
+        AdmissionControl.EndpointLimit endpointLimit = new AdmissionControl.EndpointLimit("test_queue_timeout", 1, 1);
+        assertNull(endpointLimit.acquire(1000));
+
+        // Con lugar en la cola se espera el timeout antes de rechazar
+        long startTime = System.nanoTime();
+        assertEquals("queue_timeout", endpointLimit.acquire(100));
+        assertTrue(System.nanoTime() - startTime >= 100_000_000L);
+        assertEquals(0.0, Metrics.getSnapshot().get("admission_queued{endpoint=\"test_queue_timeout\"}"));
+
+        // Una petición encolada obtiene el lugar liberado antes del timeout
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {}
+            endpointLimit.release();
+        });
+        releaser.start();
+        assertNull(endpointLimit.acquire(5000));
+        releaser.join();
+        endpointLimit.release();
+    }
+
+    @Test
+    public void testBatchItemConcurrency() throws InterruptedException {
+        String clientId = "test_batch_concurrency";
+        int maxConcurrency = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < maxConcurrency; i++) {
+            assertTrue(AdmissionControl.admitBatchItem(clientId));
+        }
+
+        // Con todos los pares del cliente en curso, el siguiente espera a que termine alguno
+        Thread waiter = new Thread(() -> AdmissionControl.admitBatchItem(clientId));
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        AdmissionControl.releaseBatchItem(clientId);
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        for (int i = 0; i < maxConcurrency; i++) {
+            AdmissionControl.releaseBatchItem(clientId);
+        }
+    }
+}
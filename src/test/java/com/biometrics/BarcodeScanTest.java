@@ -16,6 +16,11 @@ public class BarcodeScanTest extends BaseTest {
         testBarcodeResponse("documents/barcode/barcode1.jpeg");
     }
 
+    @Test
+    public void testBarcode2() {
+        testBarcodeResponse("documents/barcode/barcode2.jpeg");
+    }
+
     @Test
     public void testBarcode3() {
         testBarcodeResponse("documents/barcode/barcode3.jpeg");
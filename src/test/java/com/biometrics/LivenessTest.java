@@ -1,6 +1,7 @@
 package com.biometrics;
 
 import com.biometrics.controllers.ApiController;
+import com.biometrics.utils.MatScope;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.DynamicTest;
@@ -16,7 +17,11 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 public class LivenessTest extends BaseTest {
 
+    // Menor que el lado mayor de casi todas las imagenes de prueba, para que la detección pase por la copia reducida y el refinamiento
+    private static final int DOWNSCALED_FACE_DETECTION_MAX_SIZE = 480;
+
     protected ApiController api = new ApiController();
+    protected ApiController downscalingApi = new ApiController(DOWNSCALED_FACE_DETECTION_MAX_SIZE);
 
     @TestFactory
     @DisplayName("Real Tests")
@@ -36,14 +41,32 @@ public class LivenessTest extends BaseTest {
         }));
     }
 
+    @TestFactory
+    @DisplayName("Downscaled Detection Tests")
+    Stream<DynamicTest> testDownscaledDetectionLivenessSessions() {
+        File realDir = new File("src/test/resources/liveness/real/");
+        File fakeDir = new File("src/test/resources/liveness/fake/");
+        return Stream.concat(
+            Arrays.stream(realDir.listFiles()).map(file -> DynamicTest.dynamicTest("real/" + file.getName(), () -> testLivenessResponse(downscalingApi, file, true))),
+            Arrays.stream(fakeDir.listFiles()).map(file -> DynamicTest.dynamicTest("fake/" + file.getName(), () -> testLivenessResponse(downscalingApi, file, false))));
+    }
+
     private void testLivenessResponse(File livenessFolder, boolean liveness) {
+        testLivenessResponse(api, livenessFolder, liveness);
+    }
+
+    private void testLivenessResponse(ApiController api, File livenessFolder, boolean liveness) {
         System.out.println("Liveness data \"" + livenessFolder + "\" should be " + (liveness? "REAL" : "FAKE (SPOOF)"));
         try {
             byte[] imageBytes = FileUtils.readFileToByteArray(new File(livenessFolder + "/image.jpeg"));
             byte[] zoomedImageBytes = FileUtils.readFileToByteArray(new File(livenessFolder + "/zoomedImage.jpeg"));
-            int status = this.api.verifyLivenessImages(imageBytes, zoomedImageBytes);
+            long liveMats = MatScope.getLiveMats();
+            long unscopedMats = Metrics.getCount("opencv_mats_unscoped");
+            int status = api.verifyLivenessImages(imageBytes, zoomedImageBytes);
             System.out.println("Liveness status: " + (status == 0? "REAL" : "FAKE (" + status + ")"));
             assertEquals(liveness, status == 0);
+            assertEquals(liveMats, MatScope.getLiveMats());
+            assertEquals(unscopedMats, Metrics.getCount("opencv_mats_unscoped"));
         } catch (Exception exception) {
             fail("Liveness test to folder \"" + livenessFolder + "\" failed !!");
         }
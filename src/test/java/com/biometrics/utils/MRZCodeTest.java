@@ -0,0 +1,127 @@
+package com.biometrics.utils;
+
+import com.biometrics.BaseTest;
+import com.biometrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MRZCodeTest extends BaseTest {
+
+    private static final String[] TD1_SPECIMEN = {"I<UTOD231458907<<<<<<<<<<<<<<<", "7408122F1204159UTO<<<<<<<<<<<6", "ERIKSSON<<ANNA<MARIA<<<<<<<<<<"};
+    private static final String[] TD2_SPECIMEN = {"I<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<", "D231458907UTO7408122F1204159<<<<<<<6"};
+    private static final String[] TD3_SPECIMEN = {"P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<", "L898902C36UTO7408122F1204159ZE184226B<<<<<10"};
+    private static final String[] ARGENTINE_CODE = {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"};
+
+    @Test
+    public void testTD1Specimen() {
+        String mrzCode = MRZUtils.processCode(TD1_SPECIMEN);
+        assertEquals(String.join("", TD1_SPECIMEN), mrzCode);
+        Map<String, Object> documentData = MRZUtils.parseCode(mrzCode);
+        assertEquals("D23145890", documentData.get(Document.DOCUMENT_NUMBER_FIELD));
+        assertEquals("F", documentData.get(Document.GENDER_PROPERTY_FIELD));
+        assertEquals("Eriksson", documentData.get(Document.LAST_NAME_FIELD));
+        assertEquals("Anna Maria", documentData.get(Document.FIRST_NAME_FIELD));
+    }
+
+    @Test
+    public void testTD2Specimen() {
+        String mrzCode = MRZUtils.processCode(TD2_SPECIMEN);
+        assertEquals(String.join("", TD2_SPECIMEN), mrzCode);
+        Map<String, Object> documentData = MRZUtils.parseCode(mrzCode);
+        assertEquals("D23145890", documentData.get(Document.DOCUMENT_NUMBER_FIELD));
+        assertEquals("Eriksson", documentData.get(Document.LAST_NAME_FIELD));
+        assertEquals("Anna Maria", documentData.get(Document.FIRST_NAME_FIELD));
+    }
+
+    @Test
+    public void testTD3Specimen() {
+        String mrzCode = MRZUtils.processCode(TD3_SPECIMEN);
+        assertEquals(String.join("", TD3_SPECIMEN), mrzCode);
+        Map<String, Object> documentData = MRZUtils.parseCode(mrzCode);
+        assertEquals("L898902C3", documentData.get(Document.DOCUMENT_NUMBER_FIELD));
+        assertEquals("F", documentData.get(Document.GENDER_PROPERTY_FIELD));
+        assertEquals("Eriksson", documentData.get(Document.LAST_NAME_FIELD));
+    }
+
+    @Test
+    public void testArgentineCode() {
+        String mrzCode = MRZUtils.processCode(ARGENTINE_CODE);
+        assertEquals(String.join("", ARGENTINE_CODE), mrzCode);
+        Map<String, Object> documentData = MRZUtils.parseCode(mrzCode);
+        assertEquals(29385108, documentData.get(Document.DOCUMENT_NUMBER_FIELD));
+        assertEquals("M", documentData.get(Document.GENDER_PROPERTY_FIELD));
+        assertEquals("Amengual", documentData.get(Document.LAST_NAME_FIELD));
+        assertEquals("Luis Manuel", documentData.get(Document.FIRST_NAME_FIELD));
+    }
+
+    @Test
+    public void testShortArgentineNumber() {
+        // Número de 7 digitos completado con rellenos y el digito verificador en su posición
+        String[] paddedCode = {"IDARG1234567<<4<<<<<<<<<<<<<<<", "6501015M3001019ARG<<<<<<<<<<<6", "PEREZ<<JUAN<<<<<<<<<<<<<<<<<<<"};
+        String mrzCode = MRZUtils.processCode(paddedCode);
+        assertEquals(String.join("", paddedCode), mrzCode);
+        assertEquals(1234567, MRZUtils.parseCode(mrzCode).get(Document.DOCUMENT_NUMBER_FIELD));
+
+        // Número de 7 digitos con el digito verificador a continuación del primer relleno
+        String[] fillerTerminatedCode = {"IDARG1234567<4<<<<<<<<<<<<<<<<", "6501015M3001019ARG<<<<<<<<<<<2", "PEREZ<<JUAN<<<<<<<<<<<<<<<<<<<"};
+        mrzCode = MRZUtils.processCode(fillerTerminatedCode);
+        assertEquals(String.join("", fillerTerminatedCode), mrzCode);
+        assertEquals(1234567, MRZUtils.parseCode(mrzCode).get(Document.DOCUMENT_NUMBER_FIELD));
+    }
+
+    @Test
+    public void testConfusedCharacters() {
+        assertEquals(String.join("", ARGENTINE_CODE), MRZUtils.processCode(new String[] {"1DARG293851O8<O<<<<<<<<<<<<<<", "82O41O3M3OO5165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<"}));
+        assertEquals(String.join("", ARGENTINE_CODE), MRZUtils.processCode(new String[] {"IDARG293851DB<0<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<G", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+    }
+
+    @Test
+    public void testChecksumRepairs() {
+        // Un único digito confundible que cumple con el digito verificador
+        assertEquals(String.join("", ARGENTINE_CODE), MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204103M3005765ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+        assertEquals(String.join("", ARGENTINE_CODE), MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204103M8005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+
+        // Varios candidatos que cumplen con el digito verificador
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<8<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204108M3005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+        assertNull(MRZUtils.processCode(new String[] {"I<UTOD23145B907<<<<<<<<<<<<<<<", "7408122F1204159UTO<<<<<<<<<<<6", "ERIKSSON<<ANNA<MARIA<<<<<<<<<<"}));
+
+        // Campos sin reparación posible
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<6<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+    }
+
+    @Test
+    public void testCompositeChecksum() {
+        // El digito verificador general nunca se repara
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<8", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<<", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+
+        // Datos opcionales leídos de más, que se descartan solo si así se cumple el digito verificador general
+        assertEquals(String.join("", ARGENTINE_CODE), MRZUtils.processCode(new String[] {"IDARG29385108<0O<<<<<<<<<<<<<<", "8204103M3005165ARG<<<<<<<<<<<6", "AMENGUAL<<LUIS<MANUEL<<<<<<<<<"}));
+        assertEquals(String.join("", TD1_SPECIMEN), MRZUtils.processCode(new String[] {"I<UTOD231458907<<<<<E<<<<<<<<<", "7408122F1204159UTO<<<<<<<<<<<6", "ERIKSSON<<ANNA<MARIA<<<<<<<<<<"}));
+    }
+
+    @Test
+    public void testUnrecognizedCode() {
+        assertNull(MRZUtils.processCode(new String[] {"IDARG29385108<0<<<<<<<<<<<<<<<"}));
+        assertNull(MRZUtils.parseCode("IDARG29385108<0<<<<<<<<<<<<<<<"));
+    }
+
+    @Test
+    public void testUnreadableCodeAttempts() throws IOException {
+        // Una franja detectada pero ilegible se reconoce una vez en cada orientación, sin reintentos
+        long linesCount = Metrics.getCount("mrz_ocr_mode", "mode", "lines");
+        long blockCount = Metrics.getCount("mrz_ocr_mode", "mode", "block");
+        long scaledLinesCount = Metrics.getCount("mrz_ocr_mode", "mode", "scaled_lines");
+        long failedFallbacksCount = Metrics.getCount("mrz_orientation_fallbacks", "result", "failed");
+        assertNull(MRZUtils.scanCode(getImageFromResource("liveness/process/test2/image.jpeg")));
+        assertEquals(2, Metrics.getCount("mrz_ocr_mode", "mode", "lines") - linesCount);
+        assertEquals(0, Metrics.getCount("mrz_ocr_mode", "mode", "block") - blockCount);
+        assertEquals(0, Metrics.getCount("mrz_ocr_mode", "mode", "scaled_lines") - scaledLinesCount);
+        assertEquals(1, Metrics.getCount("mrz_orientation_fallbacks", "result", "failed") - failedFallbacksCount);
+    }
+}
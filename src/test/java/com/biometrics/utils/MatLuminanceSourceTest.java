@@ -0,0 +1,84 @@
+package com.biometrics.utils;
+
+import com.biometrics.BaseTest;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatLuminanceSourceTest extends BaseTest {
+
+    private static final String IMAGE_RESOURCE_NAME = "documents/barcode/barcode1.jpeg";
+
+    @Test
+    public void testMatrix() throws IOException {
+        try (MatScope scope = MatScope.open()) {
+            Mat image = getGrayImage();
+            LuminanceSource source = new MatLuminanceSource(image);
+            byte[] matrix = source.getMatrix();
+            assertEquals(image.cols() * image.rows(), matrix.length);
+            assertTrue(Arrays.equals(getPlanarSource(image).getMatrix(), matrix));
+        }
+    }
+
+    @Test
+    public void testCrop() throws IOException {
+        try (MatScope scope = MatScope.open()) {
+            Mat image = getGrayImage();
+            LuminanceSource source = new MatLuminanceSource(image).crop(13, 7, 101, 53).crop(5, 3, 60, 40);
+            LuminanceSource expectedSource = getPlanarSource(image).crop(13, 7, 101, 53).crop(5, 3, 60, 40);
+            assertSameLuminances(expectedSource, source);
+        }
+    }
+
+    @Test
+    public void testRotateCounterClockwise() throws IOException {
+        try (MatScope scope = MatScope.open()) {
+            Mat image = getGrayImage();
+            LuminanceSource expectedSource = new BufferedImageLuminanceSource(OpenCVUtils.getBufferedImage(image));
+            assertSameLuminances(expectedSource.rotateCounterClockwise(), new MatLuminanceSource(image).rotateCounterClockwise());
+            assertSameLuminances(expectedSource.crop(13, 7, 101, 53).rotateCounterClockwise(), new MatLuminanceSource(image).crop(13, 7, 101, 53).rotateCounterClockwise());
+        }
+    }
+
+    @Test
+    public void testIndependentSources() throws IOException {
+        try (MatScope scope = MatScope.open()) {
+            // Dos fuentes creadas en el mismo hilo no deben compartir sus pixeles
+            Mat image = getGrayImage();
+            Mat invertedImage = MatScope.track(new Mat());
+            Core.bitwise_not(image, invertedImage);
+            LuminanceSource source = new MatLuminanceSource(image);
+            LuminanceSource invertedSource = new MatLuminanceSource(invertedImage);
+            assertTrue(Arrays.equals(getPlanarSource(image).getMatrix(), source.getMatrix()));
+            assertTrue(Arrays.equals(getPlanarSource(invertedImage).getMatrix(), invertedSource.getMatrix()));
+        }
+    }
+
+    private Mat getGrayImage() throws IOException {
+        return OpenCVUtils.getImage(getImageFromResource(IMAGE_RESOURCE_NAME), Imgcodecs.IMREAD_GRAYSCALE);
+    }
+
+    private static LuminanceSource getPlanarSource(Mat image) {
+        byte[] luminances = new byte[image.cols() * image.rows()];
+        image.get(0, 0, luminances);
+        return new PlanarYUVLuminanceSource(luminances, image.cols(), image.rows(), 0, 0, image.cols(), image.rows(), false);
+    }
+
+    private static void assertSameLuminances(LuminanceSource expectedSource, LuminanceSource source) {
+        assertEquals(expectedSource.getWidth(), source.getWidth());
+        assertEquals(expectedSource.getHeight(), source.getHeight());
+        assertTrue(Arrays.equals(expectedSource.getMatrix(), source.getMatrix()));
+        for (int y = 0; y < source.getHeight(); y++) {
+            assertTrue(Arrays.equals(expectedSource.getRow(y, null), source.getRow(y, null)));
+        }
+    }
+}